@@ -12,6 +12,19 @@ plugins {
 
 group = "com.github.project2100";
 
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    testImplementation("org.junit.jupiter:junit-jupiter:5.11.4")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+tasks.test {
+    useJUnitPlatform()
+}
+
 // This section is required to force an actual publication by the maven publishing task
 // See https://github.com/jitpack/jitpack.io/issues/4110 for related issue
 publishing {
@@ -0,0 +1,250 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.ffmpeg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Reads the duration of a media file straight from its container header,
+ * without spawning FFProbe. Supported containers are the ISO base media family
+ * (MP4, MOV, M4V, 3GP...), through the <code>moov/mvhd</code> box, and
+ * Matroska/WebM, through the <code>Segment/Info/Duration</code> element.
+ * <p>
+ * Only the few header bytes needed are read, through positional reads on a
+ * {@link FileChannel}; the media data is never touched.
+ *
+ * @author Project2100
+ */
+public final class ContainerDurationReader {
+
+    // ISO BMFF box types
+    private static final int FTYP = 0x66747970, MOOV = 0x6D6F6F76, MVHD = 0x6D766864,
+            MDAT = 0x6D646174, FREE = 0x66726565, SKIP = 0x736B6970, WIDE = 0x77696465;
+
+    // Matroska element IDs
+    private static final long EBML = 0x1A45DFA3L, SEGMENT = 0x18538067L, INFO = 0x1549A966L,
+            CLUSTER = 0x1F43B675L, TIMECODE_SCALE = 0x2AD7B1L, DURATION = 0x4489L;
+    private static final long DEFAULT_TIMECODE_SCALE = 1000000L;
+    private static final long UNKNOWN_SIZE = -1;
+
+    private final FileChannel channel;
+    private final long length;
+    private final ByteBuffer buffer = ByteBuffer.allocate(32);
+
+    private ContainerDurationReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.length = channel.size();
+    }
+
+    /**
+     * Reads the duration declared in the container header of the given file.
+     *
+     * @param source the media file
+     * @return the duration, or an empty optional if the container is not
+     * supported, is malformed or does not declare a duration
+     * @throws IOException if the file cannot be read
+     */
+    public static Optional<Duration> readDuration(Path source) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            ContainerDurationReader reader = new ContainerDurationReader(channel);
+            if (!reader.read(0, 8)) return Optional.empty();
+
+            if (reader.buffer.getInt(0) == (int) EBML) return reader.readMatroska();
+            switch (reader.buffer.getInt(4)) {
+                case FTYP:
+                case MOOV:
+                case MDAT:
+                case FREE:
+                case SKIP:
+                case WIDE:
+                    return reader.readIsoBmff();
+                default:
+                    return Optional.empty();
+            }
+        }
+    }
+
+    // Fills the buffer with count bytes from the given position, telling
+    // whether the file had enough of them
+    private boolean read(long position, int count) throws IOException {
+        buffer.clear().limit(count);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) return false;
+        }
+        buffer.flip();
+        return true;
+    }
+
+    //__________________________________________________________________________
+    // ISO base media file format
+
+    private Optional<Duration> readIsoBmff() throws IOException {
+        long[] moov = findBox(0, length, MOOV);
+        if (moov == null) return Optional.empty();
+        long[] mvhd = findBox(moov[0], moov[1], MVHD);
+        if (mvhd == null || !read(mvhd[0], 4)) return Optional.empty();
+
+        long timescale, duration;
+        if (buffer.get(0) == 1) {
+            if (!read(mvhd[0] + 20, 12)) return Optional.empty();
+            timescale = buffer.getInt(0) & 0xFFFFFFFFL;
+            duration = buffer.getLong(4);
+        }
+        else {
+            if (!read(mvhd[0] + 12, 8)) return Optional.empty();
+            timescale = buffer.getInt(0) & 0xFFFFFFFFL;
+            duration = buffer.getInt(4) & 0xFFFFFFFFL;
+            if (duration == 0xFFFFFFFFL) return Optional.empty();
+        }
+        // Fragmented files declare no duration in mvhd
+        if (timescale == 0 || duration <= 0) return Optional.empty();
+
+        return Optional.of(Duration.ofSeconds(duration / timescale, (duration % timescale) * 1000000000L / timescale));
+    }
+
+    // Scans the sibling boxes in [from, to) for the given type, returning the
+    // bounds of its payload
+    private long[] findBox(long from, long to, int type) throws IOException {
+        for (long position = from; position + 8 <= to;) {
+            if (!read(position, 8)) return null;
+            long size = buffer.getInt(0) & 0xFFFFFFFFL;
+            int boxType = buffer.getInt(4);
+            int header = 8;
+
+            if (size == 1) {
+                if (!read(position + 8, 8)) return null;
+                size = buffer.getLong(0);
+                header = 16;
+            }
+            else if (size == 0) size = to - position;
+            if (size < header) return null;
+
+            if (boxType == type) return new long[] {position + header, Math.min(position + size, to)};
+            position += size;
+        }
+        return null;
+    }
+
+    //__________________________________________________________________________
+    // Matroska
+
+    private long position;
+
+    private Optional<Duration> readMatroska() throws IOException {
+        position = 0;
+        if (readId() != EBML) return Optional.empty();
+        long size = readSize();
+        if (size == UNKNOWN_SIZE) return Optional.empty();
+        position += size;
+
+        while (position < length) {
+            long id = readId();
+            size = readSize();
+            if (id < 0) return Optional.empty();
+            if (id == SEGMENT) return readSegment(size == UNKNOWN_SIZE ? length : Math.min(length, position + size));
+            if (size == UNKNOWN_SIZE) return Optional.empty();
+            position += size;
+        }
+        return Optional.empty();
+    }
+
+    // Info is expected among the first children of the segment; clusters mark
+    // the start of media data, where the scan gives up
+    private Optional<Duration> readSegment(long end) throws IOException {
+        while (position < end) {
+            long id = readId();
+            long size = readSize();
+            if (id < 0 || id == CLUSTER || size == UNKNOWN_SIZE) return Optional.empty();
+            if (id == INFO) return readInfo(Math.min(end, position + size));
+            position += size;
+        }
+        return Optional.empty();
+    }
+
+    private Optional<Duration> readInfo(long end) throws IOException {
+        long scale = DEFAULT_TIMECODE_SCALE;
+        double duration = -1;
+
+        while (position < end) {
+            long id = readId();
+            long size = readSize();
+            if (id < 0 || size == UNKNOWN_SIZE) return Optional.empty();
+
+            if (id == TIMECODE_SCALE && size > 0 && size <= 8) {
+                if (!read(position, (int) size)) return Optional.empty();
+                scale = 0;
+                for (int i = 0; i < size; i++)
+                    scale = scale << 8 | (buffer.get(i) & 0xFF);
+            }
+            else if (id == DURATION && (size == 4 || size == 8)) {
+                if (!read(position, (int) size)) return Optional.empty();
+                duration = size == 4 ? buffer.getFloat(0) : buffer.getDouble(0);
+            }
+            position += size;
+        }
+
+        if (duration <= 0 || scale <= 0) return Optional.empty();
+        return Optional.of(Duration.ofNanos(Math.round(duration * scale)));
+    }
+
+    // Element IDs keep their length marker; returns -1 on malformed input
+    private long readId() throws IOException {
+        if (!read(position, 1)) return -1;
+        int first = buffer.get(0) & 0xFF;
+        int width = Integer.numberOfLeadingZeros(first) - 23;
+        if (width > 4 || !read(position, width)) return -1;
+
+        long id = 0;
+        for (int i = 0; i < width; i++)
+            id = id << 8 | (buffer.get(i) & 0xFF);
+        position += width;
+        return id;
+    }
+
+    // Sizes drop their length marker; all value bits set means unknown size
+    private long readSize() throws IOException {
+        if (!read(position, 1)) return UNKNOWN_SIZE;
+        int first = buffer.get(0) & 0xFF;
+        int width = Integer.numberOfLeadingZeros(first) - 23;
+        if (width > 8 || !read(position, width)) return UNKNOWN_SIZE;
+
+        long size = first & (0xFF >> width);
+        boolean unknown = size == 0xFF >> width;
+        for (int i = 1; i < width; i++) {
+            int b = buffer.get(i) & 0xFF;
+            size = size << 8 | b;
+            unknown &= b == 0xFF;
+        }
+        position += width;
+        return unknown ? UNKNOWN_SIZE : size;
+    }
+}
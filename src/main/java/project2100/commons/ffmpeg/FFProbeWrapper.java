@@ -27,7 +27,27 @@ package project2100.commons.ffmpeg;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  *
@@ -36,27 +56,94 @@ import java.nio.file.Path;
 public class FFProbeWrapper {
     
     public static final String ffprobeMissingMessage = "FFProbe not found!";
-    
+
+    /**
+     * Default running time limit for a single FFProbe instance, in seconds.
+     */
+    public static final long DEFAULT_TIMEOUT = 30;
+
+    // Upper bound on live child processes, regardless of how many probes are
+    // requested concurrently
+    static final ProcessRunner RUNNER = new ProcessRunner(ffprobeMissingMessage, 4 * defaultParallelism());
+
+    /**
+     * Gets the live metrics of the FFProbe instances run by this class and the
+     * other probes of this package.
+     *
+     * @return the FFProbe process metrics
+     */
+    public static ProbeMetrics getMetrics() {
+        return RUNNER.getMetrics();
+    }
+
+    // Runs the command asynchronously, completing with the first line of its
+    // standard output, or null if it printed nothing
+    // WARNING ONLY ONE-LINERS allowed here
+    private static CompletableFuture<String> executeCommandAsync(String[] command, long timeout, TimeUnit unit) {
+        return RUNNER.submit(command, stdout -> new BufferedReader(new InputStreamReader(stdout, StandardCharsets.UTF_8)).readLine(), timeout, unit);
+    }
+
     // If ffprobe is missing, the generated IOException will be set as cause to
     // a new IOE with message <code>ffprobemissingmessage<\code>
-    // WARNING ONLY ONE-LINERS allowed here
     private static String executeCommand(String[] command) throws IOException {
-        
+        return await(executeCommandAsync(command, DEFAULT_TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    // Blocks on the future, translating its failures to IOExceptions; the
+    // future is cancelled if the wait is interrupted
+    static <T> T await(CompletableFuture<T> future) throws IOException {
         try {
-            Process ffprobe = Runtime.getRuntime().exec(command);
-            //int exitCode=ffprobe.waitFor();
-            return new BufferedReader(new InputStreamReader(ffprobe.getInputStream())).readLine();
+            return future.get();
         }
-        catch (IOException ex) {
-            if (ex.getMessage().contains("CreateProcess error=2")) throw new IOException(ffprobeMissingMessage, ex);
-            else throw ex;
+        catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for ffprobe");
+        }
+        catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof TimeoutException) throw new InterruptedIOException(cause.getMessage());
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
         }
     }
-    
-    
+
+    /**
+     * Maps the result of a process future, so that completing the mapped
+     * future early, e.g. by cancelling it, also kills the underlying process.
+     */
+    static <T, R> CompletableFuture<R> map(CompletableFuture<T> source, Function<? super T, ? extends R> mapper) {
+        CompletableFuture<R> mapped = source.thenApply(mapper);
+        mapped.whenComplete((value, ex) -> source.cancel(true));
+        return mapped;
+    }
+
+    private static String[] lengthCommand(Path source) {
+        return new String[] {
+                "ffprobe",
+                "-v", // log level
+                "error", //  ""
+                "-show_entries", // entry filter
+                "format=duration", //  ""
+                "-print_format", // how ffprobe displays output
+                "flat", //  ""
+                source.toAbsolutePath().toString()
+        };
+    }
+
+    private static int parseLength(String output) {
+        if (output == null) throw new IllegalArgumentException("No duration reported");
+        return Integer.parseInt(output.split("\"|\\.")[2]) + 1; // extract value, round up
+    }
+
     /**
      * Returns an integer representing the duration of the video in seconds,
      * rounded up.
+     * <p>
+     * The duration is read directly from the container header when the format
+     * is known to {@link ContainerDurationReader}; FFProbe is only invoked for
+     * the other formats.
      *
      * @param source The video file
      * @return The duration of the video
@@ -65,16 +152,242 @@ public class FFProbeWrapper {
      * or some other IO failure occurs
      */
     public static int getVideoLength(Path source) throws IOException {
+        try {
+            Optional<Duration> header = ContainerDurationReader.readDuration(source);
+            if (header.isPresent()) return (int) header.get().getSeconds() + 1; // round up, as below
+        }
+        catch (IOException ex) {
+            // Let FFProbe have its try, and report its own failure
+        }
+
+        try {
+            return parseLength(executeCommand(lengthCommand(source)));
+        }
+        catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+            throw new IOException("Unreadable duration for " + source, ex);
+        }
+    }
+
+    /**
+     * Asynchronously probes the duration of the video in seconds, rounded up,
+     * killing FFProbe if it runs longer than {@link #DEFAULT_TIMEOUT} seconds.
+     *
+     * @param source The video file
+     * @return a future of the duration of the video
+     * @see #getVideoLengthAsync(Path, long, TimeUnit)
+     */
+    public static CompletableFuture<Integer> getVideoLengthAsync(Path source) {
+        return getVideoLengthAsync(source, DEFAULT_TIMEOUT, TimeUnit.SECONDS);
+    }
 
-        return Integer.parseInt(
-                executeCommand(new String[] {
-                        "ffprobe",
-                        "-show_entries", // entry filter
-                        "format=duration", //  ""
-                        "-print_format", // how ffprobe displays output
-                        "flat", //  ""
-                        source.toAbsolutePath().toString()
-                }).split("\"|\\.")[2] //extract value
-        ) + 1; // round up
+    /**
+     * Asynchronously probes the duration of the video in seconds, rounded up.
+     * No thread is held while the probe is pending; cancelling the returned
+     * future kills the FFProbe instance.
+     * <p>
+     * As in {@link #getVideoLength(Path)}, the container header is read first,
+     * on the calling thread; the returned future is then already complete, and
+     * FFProbe is not invoked.
+     *
+     * @param source The video file
+     * @param timeout the maximum running time of FFProbe
+     * @param unit the unit of the timeout
+     * @return a future of the duration of the video, failing with an
+     * IOException if FFProbe is missing or exits abnormally, or with a
+     * TimeoutException if it runs out of time
+     */
+    public static CompletableFuture<Integer> getVideoLengthAsync(Path source, long timeout, TimeUnit unit) {
+        try {
+            Optional<Duration> header = ContainerDurationReader.readDuration(source);
+            if (header.isPresent()) return CompletableFuture.completedFuture((int) header.get().getSeconds() + 1);
+        }
+        catch (IOException ex) {
+            // Let FFProbe have its try, as in getVideoLength
+        }
+
+        return map(executeCommandAsync(lengthCommand(source), timeout, unit), output -> {
+            try {
+                return parseLength(output);
+            }
+            catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+                throw new CompletionException(new IOException("Unreadable duration for " + source, ex));
+            }
+        });
+    }
+
+    private static String[] infoCommand(Path source) {
+        return new String[] {
+                "ffprobe",
+                "-v", // log level
+                "error", //  ""
+                "-show_format", // container section
+                "-show_streams", // stream sections
+                "-print_format", // how ffprobe displays output
+                "json", //  ""
+                source.toAbsolutePath().toString()
+        };
+    }
+
+    /**
+     * Probes the container and stream metadata of a media file with a single
+     * FFProbe run.
+     *
+     * @param source The media file
+     * @return The metadata of the file
+     * @throws java.io.IOException if FFProbe is missing 
+     * (grep for ffprobeMissingMessage), fails on the file, or prints
+     * unreadable output
+     */
+    public static MediaInfo probe(Path source) throws IOException {
+        return await(probeAsync(source));
+    }
+
+    /**
+     * Asynchronously probes the metadata of a media file, killing FFProbe if it
+     * runs longer than {@link #DEFAULT_TIMEOUT} seconds.
+     *
+     * @param source The media file
+     * @return a future of the metadata of the file
+     * @see #probeAsync(Path, long, TimeUnit)
+     */
+    public static CompletableFuture<MediaInfo> probeAsync(Path source) {
+        return probeAsync(source, DEFAULT_TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Asynchronously probes the metadata of a media file. FFProbe's output is
+     * parsed as it streams in, without being buffered whole; cancelling the
+     * returned future kills the FFProbe instance.
+     *
+     * @param source The media file
+     * @param timeout the maximum running time of FFProbe
+     * @param unit the unit of the timeout
+     * @return a future of the metadata of the file
+     */
+    public static CompletableFuture<MediaInfo> probeAsync(Path source, long timeout, TimeUnit unit) {
+        return RUNNER.submit(infoCommand(source),
+                stdout -> MediaInfo.parse(new JsonReader(new InputStreamReader(stdout, StandardCharsets.UTF_8))),
+                timeout, unit);
+    }
+
+    /**
+     * Returns the duration of the video in seconds, rounded up, looking it up
+     * in the given cache first.
+     *
+     * @param source The video file
+     * @param cache The cache of previously probed durations
+     * @return The duration of the video
+     * @throws java.io.IOException if the duration is not cached and probing
+     * fails
+     * @see #getVideoLength(Path)
+     */
+    public static int getVideoLength(Path source, ProbeCache<Integer> cache) throws IOException {
+        return cache.get(source, FFProbeWrapper::getVideoLength);
+    }
+
+    /**
+     * Probes the duration of every given video, running at most as many
+     * concurrent FFProbe instances as there are available processors.
+     *
+     * @param sources the video files
+     * @return a map from each distinct file to its probe outcome
+     * @throws InterruptedException if the calling thread is interrupted while
+     * waiting for results; pending probes are then abandoned
+     * @see #getVideoLength(Path)
+     */
+    public static Map<Path, ProbeResult<Integer>> getVideoLengths(Collection<Path> sources) throws InterruptedException {
+        return getVideoLengths(sources, defaultParallelism());
+    }
+
+    /**
+     * Probes the duration of every given video, running at most
+     * <code>parallelism</code> concurrent FFProbe instances.
+     *
+     * @param sources the video files
+     * @param parallelism the maximum number of concurrent probes
+     * @return a map from each distinct file to its probe outcome
+     * @throws InterruptedException if the calling thread is interrupted while
+     * waiting for results; pending probes are then abandoned
+     * @see #getVideoLength(Path)
+     */
+    public static Map<Path, ProbeResult<Integer>> getVideoLengths(Collection<Path> sources, int parallelism) throws InterruptedException {
+        Map<Path, ProbeResult<Integer>> results = new HashMap<>();
+        probeAll(sources, FFProbeWrapper::getVideoLength, parallelism, result -> results.put(result.getSource(), result));
+        return results;
+    }
+
+    /**
+     * Runs the given probe over every file through a bounded pool of workers.
+     * Results are handed to the consumer on the calling thread, in completion
+     * order, as soon as each one is available; failures are reported per file
+     * and do not stop the batch.
+     *
+     * @param <T> the type of the probed value
+     * @param sources the files to probe
+     * @param probe the probe to run on each file
+     * @param parallelism the maximum number of concurrent probes
+     * @param consumer the receiver of each probe outcome
+     * @throws InterruptedException if the calling thread is interrupted while
+     * waiting for results; pending probes are then abandoned
+     */
+    public static <T> void probeAll(Collection<Path> sources, Probe<T> probe, int parallelism, Consumer<? super ProbeResult<T>> consumer) throws InterruptedException {
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        if (sources.isEmpty()) return;
+
+        ExecutorService workers = Executors.newFixedThreadPool(Math.min(parallelism, sources.size()), new WorkerFactory());
+        try {
+            CompletionService<ProbeResult<T>> completion = new ExecutorCompletionService<>(workers);
+            for (Path source : sources)
+                completion.submit(() -> runProbe(probe, source));
+
+            for (int pending = sources.size(); pending > 0; pending--)
+                consumer.accept(completion.take().get());
+        }
+        catch (ExecutionException ex) {
+            // runProbe catches everything a probe may throw
+            throw new IllegalStateException(ex.getCause());
+        }
+        finally {
+            workers.shutdownNow();
+        }
+    }
+
+    // Turns any probe failure into a result, so that one bad file does not
+    // take down the whole batch
+    static <T> ProbeResult<T> runProbe(Probe<T> probe, Path source) {
+        try {
+            return ProbeResult.success(source, probe.probe(source));
+        }
+        catch (IOException ex) {
+            return ProbeResult.failure(source, ex);
+        }
+        catch (RuntimeException ex) {
+            return ProbeResult.failure(source, new IOException("Unreadable probe output for " + source, ex));
+        }
+    }
+
+    /**
+     * Gets the default level of parallelism for batch probes, that is one
+     * FFProbe instance per available processor.
+     *
+     * @return the default maximum number of concurrent probes
+     */
+    public static int defaultParallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    // Daemon workers, so that an abandoned batch never keeps the VM alive
+    private static class WorkerFactory implements ThreadFactory {
+
+        private static final AtomicInteger poolCount = new AtomicInteger();
+        private final int pool = poolCount.incrementAndGet();
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread worker = new Thread(task, "ffprobe-" + pool + "-" + threadCount.incrementAndGet());
+            worker.setDaemon(true);
+            return worker;
+        }
     }
 }
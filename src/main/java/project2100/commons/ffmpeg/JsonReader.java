@@ -0,0 +1,249 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.ffmpeg;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A minimal pull parser for the JSON output of FFProbe. Tokens are read
+ * straight off the stream through a fixed buffer; names and scalar values are
+ * accumulated in a single reusable text buffer, so that callers can match and
+ * convert them without creating strings.
+ * <p>
+ * Separators are not validated: the parser trusts FFProbe to produce
+ * well-formed documents, and only fails on unexpected characters or a
+ * premature end of input.
+ *
+ * @author Project2100
+ */
+final class JsonReader {
+
+    enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END
+    }
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int position, limit;
+    private final StringBuilder text = new StringBuilder(64);
+
+    JsonReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next token. For names and scalar values, the token's text is
+     * then available through {@link #text()} until the next call.
+     *
+     * @return the token read
+     * @throws IOException if the input is malformed or cannot be read
+     */
+    Token next() throws IOException {
+        int c = skipSeparators();
+        text.setLength(0);
+        switch (c) {
+            case -1:
+                return Token.END;
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '}':
+                return Token.END_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case ']':
+                return Token.END_ARRAY;
+            case '"':
+                readString();
+                // A string followed by a colon is a name
+                int after = skipWhitespace();
+                if (after == ':') {
+                    position++;
+                    return Token.NAME;
+                }
+                return Token.STRING;
+            case 't':
+            case 'f':
+            case 'n':
+                readLiteral(c);
+                return c == 'n' ? Token.NULL : Token.BOOLEAN;
+            default:
+                if (c == '-' || c >= '0' && c <= '9') {
+                    readLiteral(c);
+                    return Token.NUMBER;
+                }
+                throw new IOException("Unexpected character in JSON: '" + (char) c + "'");
+        }
+    }
+
+    /**
+     * Skips the value following the last name, including any nested content.
+     *
+     * @throws IOException if the input is malformed or cannot be read
+     */
+    void skipValue() throws IOException {
+        int depth = 0;
+        do
+            switch (next()) {
+                case BEGIN_OBJECT:
+                case BEGIN_ARRAY:
+                    depth++;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    depth--;
+                    break;
+                case END:
+                    throw new IOException("Unexpected end of JSON");
+                default:
+            }
+        while (depth > 0);
+    }
+
+    /**
+     * The text of the last name or scalar read; strings are unescaped.
+     *
+     * @return a view of the text buffer, valid until the next token is read
+     */
+    CharSequence text() {
+        return text;
+    }
+
+    boolean textIs(String value) {
+        if (text.length() != value.length()) return false;
+        for (int i = 0; i < value.length(); i++)
+            if (text.charAt(i) != value.charAt(i)) return false;
+        return true;
+    }
+
+    String textAsString() {
+        return text.toString();
+    }
+
+    /**
+     * Parses the text of the last token as a long, accepting both JSON numbers
+     * and numeric strings.
+     *
+     * @param fallback the value returned if the text is not an integer
+     * @return the parsed value, or the fallback
+     */
+    long textAsLong(long fallback) {
+        int length = text.length();
+        int i = length > 0 && text.charAt(0) == '-' ? 1 : 0;
+        if (i == length || length - i > 18) return fallback;
+
+        long value = 0;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') return fallback;
+            value = value * 10 + (c - '0');
+        }
+        return text.charAt(0) == '-' ? -value : value;
+    }
+
+    private int skipWhitespace() throws IOException {
+        for (;;) {
+            if (position == limit && !fill()) return -1;
+            char c = buffer[position];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return c;
+            position++;
+        }
+    }
+
+    private int skipSeparators() throws IOException {
+        for (;;) {
+            int c = skipWhitespace();
+            if (c != ',' && c != ':') {
+                if (c >= 0) position++;
+                return c;
+            }
+            position++;
+        }
+    }
+
+    private void readString() throws IOException {
+        for (;;) {
+            if (position == limit && !fill()) throw new IOException("Unterminated JSON string");
+            char c = buffer[position++];
+            if (c == '"') return;
+            if (c != '\\') {
+                text.append(c);
+                continue;
+            }
+
+            if (position == limit && !fill()) throw new IOException("Unterminated JSON string");
+            char escaped = buffer[position++];
+            switch (escaped) {
+                case 'b':
+                    text.append('\b');
+                    break;
+                case 'f':
+                    text.append('\f');
+                    break;
+                case 'n':
+                    text.append('\n');
+                    break;
+                case 'r':
+                    text.append('\r');
+                    break;
+                case 't':
+                    text.append('\t');
+                    break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        if (position == limit && !fill()) throw new IOException("Unterminated JSON string");
+                        int digit = Character.digit(buffer[position++], 16);
+                        if (digit < 0) throw new IOException("Malformed unicode escape in JSON");
+                        code = code << 4 | digit;
+                    }
+                    text.append((char) code);
+                    break;
+                default:
+                    text.append(escaped);
+            }
+        }
+    }
+
+    // Numbers and the true/false/null keywords
+    private void readLiteral(int first) throws IOException {
+        text.append((char) first);
+        for (;;) {
+            if (position == limit && !fill()) return;
+            char c = buffer[position];
+            if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' || c == '\r' || c == '\t') return;
+            text.append(c);
+            position++;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        int read = in.read(buffer);
+        if (read <= 0) return false;
+        position = 0;
+        limit = read;
+        return true;
+    }
+}
@@ -0,0 +1,423 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.ffmpeg;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The sorted presentation timestamps of the keyframes of a video's first
+ * video stream, in nanoseconds, for seeking and cut-point lookups.
+ * <p>
+ * Indexes are built by streaming FFProbe's packet listing, which may run to
+ * millions of lines, through a byte-level parser that only retains keyframe
+ * timestamps. They can be written to a compact binary file, which is
+ * memory-mapped when reopened: lookups are then binary searches over mapped
+ * memory.
+ *
+ * @implnote The index file is a 32-byte header (magic, version, media size,
+ * media modification time, count) followed by the timestamps as big-endian
+ * longs. The media attributes let stale indexes be detected.
+ *
+ * @author Project2100
+ */
+public final class KeyframeIndex {
+
+    /**
+     * Default running time limit for a packet listing, in seconds. Listing
+     * packets requires demuxing the whole file, hence the generous bound.
+     */
+    public static final long DEFAULT_TIMEOUT = 600;
+
+    /**
+     * Extension of index files.
+     */
+    public static final String EXTENSION = ".kfi";
+
+    private static final int MAGIC = 0x50324B49; // "P2KI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+
+    private final LongBuffer timestamps;
+    private final long mediaSize;
+    private final long mediaModified;
+
+    private KeyframeIndex(LongBuffer timestamps, long mediaSize, long mediaModified) {
+        this.timestamps = timestamps;
+        this.mediaSize = mediaSize;
+        this.mediaModified = mediaModified;
+    }
+
+    //__________________________________________________________________________
+    // Lookups
+
+    /**
+     * Gets the number of keyframes.
+     *
+     * @return the keyframe count
+     */
+    public int size() {
+        return timestamps.limit();
+    }
+
+    /**
+     * Gets the timestamp of the keyframe at the given position.
+     *
+     * @param index the position of the keyframe
+     * @return its timestamp in nanoseconds
+     * @throws IndexOutOfBoundsException if the position is out of bounds
+     */
+    public long get(int index) {
+        return timestamps.get(index);
+    }
+
+    /**
+     * Finds the last keyframe at or before the given time, i.e. the one to
+     * seek to in order to decode the frame at that time.
+     *
+     * @param nanos the time in nanoseconds
+     * @return the position of the keyframe, or -1 if all keyframes are later
+     */
+    public int floorIndex(long nanos) {
+        int low = 0, high = timestamps.limit() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long value = timestamps.get(middle);
+            if (value <= nanos) low = middle + 1;
+            else high = middle - 1;
+        }
+        return high;
+    }
+
+    /**
+     * Finds the first keyframe at or after the given time.
+     *
+     * @param nanos the time in nanoseconds
+     * @return the position of the keyframe, or -1 if all keyframes are
+     * earlier
+     */
+    public int ceilingIndex(long nanos) {
+        int floor = floorIndex(nanos);
+        if (floor >= 0 && timestamps.get(floor) == nanos) return floor;
+        return floor + 1 < timestamps.limit() ? floor + 1 : -1;
+    }
+
+    /**
+     * Gets the timestamp of the last keyframe at or before the given time.
+     *
+     * @param nanos the time in nanoseconds
+     * @return the keyframe's timestamp, or -1 if all keyframes are later
+     */
+    public long floor(long nanos) {
+        int index = floorIndex(nanos);
+        return index < 0 ? -1 : timestamps.get(index);
+    }
+
+    /**
+     * Gets the timestamp of the first keyframe at or after the given time.
+     *
+     * @param nanos the time in nanoseconds
+     * @return the keyframe's timestamp, or -1 if all keyframes are earlier
+     */
+    public long ceiling(long nanos) {
+        int index = ceilingIndex(nanos);
+        return index < 0 ? -1 : timestamps.get(index);
+    }
+
+    //__________________________________________________________________________
+    // Building
+
+    /**
+     * Builds the keyframe index of the given video, running FFProbe for at
+     * most {@link #DEFAULT_TIMEOUT} seconds.
+     *
+     * @param source the video file
+     * @return the index
+     * @throws IOException if FFProbe is missing or fails on the file
+     */
+    public static KeyframeIndex build(Path source) throws IOException {
+        return FFProbeWrapper.await(buildAsync(source, DEFAULT_TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Asynchronously builds the keyframe index of the given video. Cancelling
+     * the returned future kills the FFProbe instance.
+     *
+     * @param source the video file
+     * @param timeout the maximum running time of FFProbe
+     * @param unit the unit of the timeout
+     * @return a future of the index
+     */
+    public static CompletableFuture<KeyframeIndex> buildAsync(Path source, long timeout, TimeUnit unit) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        }
+        catch (IOException ex) {
+            CompletableFuture<KeyframeIndex> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            return failed;
+        }
+
+        String[] command = {
+            "ffprobe",
+            "-v", // log level
+            "error", //  ""
+            "-select_streams", // first video stream only
+            "v:0", //  ""
+            "-show_entries", // entry filter
+            "packet=pts_time,flags", //  ""
+            "-print_format", // one csv line per packet, no section names
+            "csv=print_section=0", //  ""
+            source.toAbsolutePath().toString()
+        };
+        return FFProbeWrapper.RUNNER.submit(command, stdout -> {
+            long[] keyframes = parsePackets(stdout);
+            return new KeyframeIndex(LongBuffer.wrap(keyframes), attributes.size(), attributes.lastModifiedTime().toMillis());
+        }, timeout, unit);
+    }
+
+    // Feeds FFProbe's packet listing through the parser
+    static long[] parsePackets(InputStream stdout) throws IOException {
+        PacketParser parser = new PacketParser();
+        byte[] buffer = new byte[1 << 16];
+        for (int read; (read = stdout.read(buffer)) >= 0;)
+            for (int i = 0; i < read; i++)
+                parser.accept(buffer[i]);
+        return parser.finish();
+    }
+
+    /**
+     * Parses lines of the form <code>12.345678,K__</code> straight from the
+     * bytes, retaining only the timestamps of keyframes; lines without a
+     * timestamp (N/A) are skipped.
+     */
+    private static class PacketParser {
+
+        private static final int SECONDS = 0, FRACTION = 1, FLAGS = 2, SKIP = 3;
+
+        private long[] keyframes = new long[1024];
+        private int count;
+        private boolean sorted = true;
+
+        private int state = SECONDS;
+        private boolean negative, valid, keyframe, flagStart;
+        private long seconds, nanos, scale = 100000000L;
+
+        private void accept(byte b) {
+            if (b == '\n') {
+                endLine();
+                return;
+            }
+
+            switch (state) {
+                case SECONDS:
+                    if (b >= '0' && b <= '9') {
+                        seconds = seconds * 10 + (b - '0');
+                        valid = true;
+                    }
+                    else if (b == '-' && !valid) negative = true;
+                    else if (b == '.') state = FRACTION;
+                    else if (b == ',') startFlags();
+                    else skip();
+                    break;
+                case FRACTION:
+                    if (b >= '0' && b <= '9') {
+                        nanos += (b - '0') * scale;
+                        scale /= 10;
+                    }
+                    else if (b == ',') startFlags();
+                    else skip();
+                    break;
+                case FLAGS:
+                    if (flagStart) keyframe = b == 'K';
+                    flagStart = false;
+                    break;
+                default:
+            }
+        }
+
+        private void startFlags() {
+            state = FLAGS;
+            flagStart = true;
+        }
+
+        private void skip() {
+            state = SKIP;
+            valid = false;
+        }
+
+        private void endLine() {
+            if (valid && keyframe) {
+                long value = seconds * 1000000000L + nanos;
+                if (negative) value = -value;
+                if (count == keyframes.length) keyframes = Arrays.copyOf(keyframes, count * 2);
+                if (count > 0 && keyframes[count - 1] > value) sorted = false;
+                keyframes[count++] = value;
+            }
+            state = SECONDS;
+            negative = valid = keyframe = flagStart = false;
+            seconds = nanos = 0;
+            scale = 100000000L;
+        }
+
+        private long[] finish() {
+            // The last line may lack its terminator
+            endLine();
+            long[] result = Arrays.copyOf(keyframes, count);
+            // Keyframes are normally in presentation order already
+            if (!sorted) Arrays.sort(result);
+            return result;
+        }
+    }
+
+    //__________________________________________________________________________
+    // Persistence
+
+    /**
+     * Writes this index to the given file, replacing it atomically where the
+     * file system allows it.
+     *
+     * @param target the index file
+     * @throws IOException if writing fails
+     */
+    public void write(Path target) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putLong(mediaSize).putLong(mediaModified).putLong(size()).flip();
+                while (header.hasRemaining())
+                    channel.write(header);
+
+                ByteBuffer chunk = ByteBuffer.allocate(1 << 16);
+                LongBuffer values = timestamps.duplicate();
+                values.rewind();
+                while (values.hasRemaining()) {
+                    chunk.clear();
+                    while (values.hasRemaining() && chunk.remaining() >= Long.BYTES)
+                        chunk.putLong(values.get());
+                    chunk.flip();
+                    while (chunk.hasRemaining())
+                        channel.write(chunk);
+                }
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Opens an index file by mapping it into memory.
+     *
+     * @param indexFile the index file
+     * @return the mapped index
+     * @throws IOException if the file cannot be read or is not a valid index
+     */
+    public static KeyframeIndex open(Path indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) throw new IOException("Truncated keyframe index: " + indexFile);
+
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize).order(ByteOrder.BIG_ENDIAN);
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION)
+                throw new IOException("Not a keyframe index: " + indexFile);
+            long count = mapped.getLong(24);
+            if (count < 0 || count != (fileSize - HEADER_SIZE) / Long.BYTES)
+                throw new IOException("Truncated keyframe index: " + indexFile);
+
+            mapped.position(HEADER_SIZE);
+            return new KeyframeIndex(mapped.slice().asLongBuffer(), mapped.getLong(8), mapped.getLong(16));
+        }
+    }
+
+    /**
+     * Gets the location of the index file of a video.
+     *
+     * @param source the video file
+     * @param cacheDirectory the directory holding index files, or null to keep
+     * each index next to its video
+     * @return the index file's path
+     */
+    public static Path indexFileFor(Path source, Path cacheDirectory) {
+        Path absolute = source.toAbsolutePath().normalize();
+        String name = absolute.getFileName() + EXTENSION;
+        if (cacheDirectory == null) return absolute.resolveSibling(name);
+        // Disambiguate same-named videos from different directories
+        return cacheDirectory.resolve(Integer.toHexString(absolute.toString().hashCode()) + "-" + name);
+    }
+
+    /**
+     * Gets the keyframe index of a video, mapping its index file if it is up
+     * to date, or building and writing it otherwise.
+     *
+     * @param source the video file
+     * @param cacheDirectory the directory holding index files, or null to keep
+     * each index next to its video
+     * @return the index
+     * @throws IOException if the index must be built and FFProbe fails, or the
+     * index file cannot be written
+     */
+    public static KeyframeIndex load(Path source, Path cacheDirectory) throws IOException {
+        Path indexFile = indexFileFor(source, cacheDirectory);
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+
+        if (Files.isRegularFile(indexFile))
+            try {
+                KeyframeIndex index = open(indexFile);
+                if (index.mediaSize == attributes.size() && index.mediaModified == attributes.lastModifiedTime().toMillis())
+                    return index;
+            }
+            catch (IOException ex) {
+                // Corrupted index, rebuild it
+            }
+
+        KeyframeIndex index = build(source);
+        index.write(indexFile);
+        return index;
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.ffmpeg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The container-level and per-stream metadata of a media file, as reported
+ * by a single FFProbe run with <code>-show_format -show_streams</code>.
+ * Instances are immutable.
+ * <p>
+ * Numeric properties that FFProbe does not report are set to -1 (or 0 for
+ * frame rates); durations are reported as empty optionals.
+ *
+ * @author Project2100
+ * @see FFProbeWrapper#probe(java.nio.file.Path)
+ */
+public final class MediaInfo {
+
+    /**
+     * Codec for storing media information in a {@link ProbeCache}.
+     */
+    public static final ProbeCache.Codec<MediaInfo> CODEC = new ProbeCache.Codec<MediaInfo>() {
+        @Override
+        public void write(DataOutput out, MediaInfo value) throws IOException {
+            writeNullable(out, value.formatName);
+            out.writeLong(value.durationNanos);
+            out.writeLong(value.bitRate);
+            out.writeInt(value.streams.size());
+            for (Stream stream : value.streams) {
+                out.writeInt(stream.index);
+                writeNullable(out, stream.type);
+                writeNullable(out, stream.codecName);
+                out.writeInt(stream.width);
+                out.writeInt(stream.height);
+                out.writeDouble(stream.frameRate);
+                out.writeLong(stream.bitRate);
+                out.writeLong(stream.durationNanos);
+            }
+        }
+
+        @Override
+        public MediaInfo read(DataInput in) throws IOException {
+            String formatName = readNullable(in);
+            long durationNanos = in.readLong();
+            long bitRate = in.readLong();
+            int count = in.readInt();
+            List<Stream> streams = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+                streams.add(new Stream(in.readInt(), readNullable(in), readNullable(in),
+                        in.readInt(), in.readInt(), in.readDouble(), in.readLong(), in.readLong()));
+            return new MediaInfo(formatName, durationNanos, bitRate, streams);
+        }
+    };
+
+    private final String formatName;
+    private final long durationNanos;
+    private final long bitRate;
+    private final List<Stream> streams;
+
+    private MediaInfo(String formatName, long durationNanos, long bitRate, List<Stream> streams) {
+        this.formatName = formatName;
+        this.durationNanos = durationNanos;
+        this.bitRate = bitRate;
+        this.streams = Collections.unmodifiableList(streams);
+    }
+
+    /**
+     * Gets the short name of the container format, such as
+     * <code>matroska,webm</code>.
+     *
+     * @return the format name, or null if not reported
+     */
+    public String getFormatName() {
+        return formatName;
+    }
+
+    /**
+     * Gets the duration of the whole file, with the full precision reported
+     * by FFProbe (microseconds).
+     *
+     * @return the duration, if reported
+     */
+    public Optional<Duration> getDuration() {
+        return durationNanos < 0 ? Optional.empty() : Optional.of(Duration.ofNanos(durationNanos));
+    }
+
+    /**
+     * Gets the overall bit rate of the file.
+     *
+     * @return the bit rate in bits per second, or -1 if not reported
+     */
+    public long getBitRate() {
+        return bitRate;
+    }
+
+    /**
+     * Gets all streams of the file, ordered by index.
+     *
+     * @return an unmodifiable list of streams
+     */
+    public List<Stream> getStreams() {
+        return streams;
+    }
+
+    /**
+     * Gets the first video stream of the file. Attached pictures, such as
+     * cover art, are reported by FFProbe as video streams too.
+     *
+     * @return the first video stream, if any
+     */
+    public Optional<Stream> getVideoStream() {
+        return getStream("video");
+    }
+
+    /**
+     * Gets the first audio stream of the file.
+     *
+     * @return the first audio stream, if any
+     */
+    public Optional<Stream> getAudioStream() {
+        return getStream("audio");
+    }
+
+    private Optional<Stream> getStream(String type) {
+        for (Stream stream : streams)
+            if (type.equals(stream.type)) return Optional.of(stream);
+        return Optional.empty();
+    }
+
+    @Override
+    public String toString() {
+        return "MediaInfo[" + formatName + ", " + getDuration().map(Duration::toString).orElse("?") + ", " + bitRate + " b/s, " + streams + "]";
+    }
+
+    /**
+     * A single stream of a media file.
+     */
+    public static final class Stream {
+
+        private final int index;
+        private final String type;
+        private final String codecName;
+        private final int width;
+        private final int height;
+        private final double frameRate;
+        private final long bitRate;
+        private final long durationNanos;
+
+        private Stream(int index, String type, String codecName, int width, int height, double frameRate, long bitRate, long durationNanos) {
+            this.index = index;
+            this.type = type;
+            this.codecName = codecName;
+            this.width = width;
+            this.height = height;
+            this.frameRate = frameRate;
+            this.bitRate = bitRate;
+            this.durationNanos = durationNanos;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Gets the type of the stream, such as <code>video</code>,
+         * <code>audio</code> or <code>subtitle</code>.
+         *
+         * @return the codec type, or null if not reported
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * Gets the short name of the stream's codec, such as
+         * <code>h264</code>.
+         *
+         * @return the codec name, or null if not reported
+         */
+        public String getCodecName() {
+            return codecName;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Gets the average frame rate of a video stream.
+         *
+         * @return the frame rate in frames per second, or 0 if not reported
+         */
+        public double getFrameRate() {
+            return frameRate;
+        }
+
+        /**
+         * Gets the bit rate of the stream.
+         *
+         * @return the bit rate in bits per second, or -1 if not reported
+         */
+        public long getBitRate() {
+            return bitRate;
+        }
+
+        public Optional<Duration> getDuration() {
+            return durationNanos < 0 ? Optional.empty() : Optional.of(Duration.ofNanos(durationNanos));
+        }
+
+        @Override
+        public String toString() {
+            return "#" + index + " " + type + "/" + codecName + (width > 0 ? " " + width + "x" + height : "") + (frameRate > 0 ? " @" + frameRate : "");
+        }
+    }
+
+    //__________________________________________________________________________
+    // Parsing
+
+    /**
+     * Parses the JSON document printed by FFProbe.
+     *
+     * @param json the reader positioned at the start of the document
+     * @return the media information
+     * @throws IOException if the document is malformed
+     */
+    static MediaInfo parse(JsonReader json) throws IOException {
+        if (json.next() != JsonReader.Token.BEGIN_OBJECT) throw new IOException("FFProbe output is not a JSON object");
+
+        String formatName = null;
+        long durationNanos = -1;
+        long bitRate = -1;
+        List<Stream> streams = new ArrayList<>();
+
+        while (json.next() == JsonReader.Token.NAME)
+            if (json.textIs("streams")) {
+                if (json.next() != JsonReader.Token.BEGIN_ARRAY) throw new IOException("Malformed stream list");
+                while (json.next() == JsonReader.Token.BEGIN_OBJECT)
+                    streams.add(parseStream(json));
+            }
+            else if (json.textIs("format")) {
+                if (json.next() != JsonReader.Token.BEGIN_OBJECT) throw new IOException("Malformed format section");
+                while (json.next() == JsonReader.Token.NAME)
+                    if (json.textIs("format_name")) {
+                        json.next();
+                        formatName = json.textAsString();
+                    }
+                    else if (json.textIs("duration")) {
+                        json.next();
+                        durationNanos = parseNanos(json.text());
+                    }
+                    else if (json.textIs("bit_rate")) {
+                        json.next();
+                        bitRate = json.textAsLong(-1);
+                    }
+                    else json.skipValue();
+            }
+            else json.skipValue();
+
+        return new MediaInfo(formatName, durationNanos, bitRate, streams);
+    }
+
+    // Called past the stream's opening brace, returns past its closing one
+    private static Stream parseStream(JsonReader json) throws IOException {
+        int index = -1;
+        String type = null;
+        String codecName = null;
+        int width = -1;
+        int height = -1;
+        double frameRate = 0;
+        long bitRate = -1;
+        long durationNanos = -1;
+
+        while (json.next() == JsonReader.Token.NAME)
+            if (json.textIs("index")) {
+                json.next();
+                index = (int) json.textAsLong(-1);
+            }
+            else if (json.textIs("codec_type")) {
+                json.next();
+                type = json.textAsString();
+            }
+            else if (json.textIs("codec_name")) {
+                json.next();
+                codecName = json.textAsString();
+            }
+            else if (json.textIs("width")) {
+                json.next();
+                width = (int) json.textAsLong(-1);
+            }
+            else if (json.textIs("height")) {
+                json.next();
+                height = (int) json.textAsLong(-1);
+            }
+            else if (json.textIs("avg_frame_rate")) {
+                json.next();
+                frameRate = parseRational(json.text());
+            }
+            else if (json.textIs("bit_rate")) {
+                json.next();
+                bitRate = json.textAsLong(-1);
+            }
+            else if (json.textIs("duration")) {
+                json.next();
+                durationNanos = parseNanos(json.text());
+            }
+            else json.skipValue();
+
+        return new Stream(index, type, codecName, width, height, frameRate, bitRate, durationNanos);
+    }
+
+    /**
+     * Parses a non-negative decimal number of seconds, such as
+     * <code>12.345678</code>, exactly into nanoseconds.
+     *
+     * @param text the decimal number
+     * @return the nanoseconds, or -1 if the text is not a valid duration
+     */
+    static long parseNanos(CharSequence text) {
+        int length = text.length();
+        long seconds = 0;
+        int i = 0;
+        for (; i < length && text.charAt(i) != '.'; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9' || i > 11) return -1;
+            seconds = seconds * 10 + (c - '0');
+        }
+        if (i == 0) return -1;
+
+        long nanos = 0;
+        int digits = 0;
+        for (i++; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            if (digits++ < 9) nanos = nanos * 10 + (c - '0');
+        }
+        for (; digits < 9; digits++)
+            nanos *= 10;
+        return seconds * 1000000000L + nanos;
+    }
+
+    // Frame rates are reported as fractions, e.g. 30000/1001; 0/0 means unknown
+    private static double parseRational(CharSequence text) {
+        int slash = -1;
+        for (int i = 0; i < text.length() && slash < 0; i++)
+            if (text.charAt(i) == '/') slash = i;
+        if (slash < 0) return 0;
+
+        long numerator = parseUnsigned(text, 0, slash);
+        long denominator = parseUnsigned(text, slash + 1, text.length());
+        return numerator > 0 && denominator > 0 ? (double) numerator / denominator : 0;
+    }
+
+    private static long parseUnsigned(CharSequence text, int from, int to) {
+        if (from == to || to - from > 18) return -1;
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static void writeNullable(DataOutput out, String value) throws IOException {
+        out.writeUTF(value == null ? "" : value);
+    }
+
+    private static String readNullable(DataInput in) throws IOException {
+        String value = in.readUTF();
+        return value.isEmpty() ? null : value;
+    }
+}
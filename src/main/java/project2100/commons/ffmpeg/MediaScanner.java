@@ -0,0 +1,430 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.ffmpeg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Walks a directory tree in parallel and probes every media file found.
+ * <p>
+ * Directories are listed concurrently by a small fork-join pool, which hands
+ * matching files to the probe workers through a bounded queue: when probing
+ * falls behind, the walkers block, so memory use stays flat no matter how
+ * large the tree is. Symbolic links are not followed.
+ * <p>
+ * A scanner runs one scan at a time; its running totals can be read from any
+ * thread while the scan is in progress.
+ *
+ * @author Project2100
+ * @param <T> the type of the probed values
+ */
+public class MediaScanner<T> {
+
+    private static final Set<String> VIDEO_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "mp4", "m4v", "mov", "mkv", "webm", "avi", "wmv", "flv", "mpg", "mpeg", "ts", "m2ts", "3gp", "ogv"));
+
+    private static final int TS_PACKET = 188;
+
+    // Path instances are compared by identity here
+    private static final Path END = Paths.get("");
+
+    private final Probe<T> probe;
+    private final Function<? super T, Duration> durationOf;
+    private Predicate<Path> filter = videoFilter();
+    private int parallelism = FFProbeWrapper.defaultParallelism();
+    private int walkers = Math.min(4, FFProbeWrapper.defaultParallelism());
+    private int queueCapacity = 1024;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong durationNanos = new AtomicLong();
+
+    /**
+     * Creates a scanner running the given probe on each file.
+     *
+     * @param probe the probe to run
+     * @param durationOf extracts the duration from a probed value, for the
+     * running totals
+     */
+    public MediaScanner(Probe<T> probe, Function<? super T, Duration> durationOf) {
+        this.probe = probe;
+        this.durationOf = durationOf;
+    }
+
+    /**
+     * Creates a scanner probing video durations, as by
+     * {@link FFProbeWrapper#getVideoLength(Path)}.
+     *
+     * @return a new scanner
+     */
+    public static MediaScanner<Integer> durations() {
+        return new MediaScanner<>(FFProbeWrapper::getVideoLength, Duration::ofSeconds);
+    }
+
+    /**
+     * Creates a scanner probing full metadata, as by
+     * {@link FFProbeWrapper#probe(Path)}.
+     *
+     * @return a new scanner
+     */
+    public static MediaScanner<MediaInfo> metadata() {
+        return new MediaScanner<>(FFProbeWrapper::probe, info -> info.getDuration().orElse(Duration.ZERO));
+    }
+
+    /**
+     * Sets which files are probed. By default, files with a common video
+     * extension are.
+     *
+     * @param filter the file filter, invoked concurrently by the walkers
+     * @see #extensionFilter(String...)
+     * @see #magicFilter()
+     */
+    public void setFilter(Predicate<Path> filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Sets the number of concurrent probes, one per available processor by
+     * default.
+     *
+     * @param parallelism the number of probe workers
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the number of files that may wait for a probe worker before the
+     * walkers block.
+     *
+     * @param queueCapacity the capacity of the file queue
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) throw new IllegalArgumentException("Capacity must be positive: " + queueCapacity);
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Scans the tree under the given root, blocking until every matching file
+     * has been probed. Results are handed to the consumer as soon as they are
+     * available, concurrently from the probe workers; unreadable directories
+     * and entries, as well as exceptions thrown while handling a file, are
+     * reported as failed results too. Exceptions thrown by the consumer are
+     * counted as failures and otherwise ignored, so that they cannot stall
+     * the scan.
+     *
+     * @param root the root of the tree
+     * @param consumer the receiver of each probe outcome
+     * @return the final totals of the scan
+     * @throws IOException if the root itself cannot be read
+     * @throws InterruptedException if the calling thread is interrupted; the
+     * scan is then abandoned
+     */
+    public Totals scan(Path root, Consumer<? super ProbeResult<T>> consumer) throws IOException, InterruptedException {
+        if (!Files.isDirectory(root)) throw new IOException("Not a directory: " + root);
+        if (!running.compareAndSet(false, true)) throw new IllegalStateException("A scan is already in progress");
+
+        files.set(0);
+        failures.set(0);
+        durationNanos.set(0);
+        BlockingQueue<Path> queue = new ArrayBlockingQueue<>(queueCapacity);
+        ForkJoinPool walkerPool = new ForkJoinPool(walkers);
+        ExecutorService probePool = Executors.newFixedThreadPool(parallelism, new ProcessRunner.DaemonFactory("media-scan"));
+        try {
+            for (int i = 0; i < parallelism; i++)
+                probePool.execute(() -> probeLoop(queue, consumer));
+
+            // Waiting on the task rather than invoking it keeps the caller
+            // interruptible; shutting the pool down then stops the walkers
+            ForkJoinTask<Void> walk = walkerPool.submit(new Walk(root, queue, consumer));
+            try {
+                walk.get();
+            }
+            catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new IOException(cause);
+            }
+            if (Thread.interrupted()) throw new InterruptedException();
+            for (int i = 0; i < parallelism; i++)
+                queue.put(END);
+
+            probePool.shutdown();
+            while (!probePool.awaitTermination(1, TimeUnit.SECONDS)) {
+            }
+            return getTotals();
+        }
+        finally {
+            walkerPool.shutdownNow();
+            probePool.shutdownNow();
+            running.set(false);
+        }
+    }
+
+    /**
+     * Gets the totals of the current scan, or of the last one if none is in
+     * progress.
+     *
+     * @return a snapshot of the totals
+     */
+    public Totals getTotals() {
+        return new Totals(files.get(), failures.get(), Duration.ofNanos(durationNanos.get()));
+    }
+
+    private void probeLoop(BlockingQueue<Path> queue, Consumer<? super ProbeResult<T>> consumer) {
+        try {
+            for (Path file = queue.take(); file != END; file = queue.take()) {
+                ProbeResult<T> result = FFProbeWrapper.runProbe(probe, file);
+                files.incrementAndGet();
+                if (result.isSuccess())
+                    try {
+                        Duration duration = durationOf.apply(result.value());
+                        if (duration != null) durationNanos.addAndGet(duration.toNanos());
+                    }
+                    catch (RuntimeException ex) {
+                        result = ProbeResult.failure(file, new IOException(ex));
+                    }
+                if (!result.isSuccess()) failures.incrementAndGet();
+                report(consumer, result);
+            }
+        }
+        catch (InterruptedException ex) {
+            // Abandoned scan
+        }
+    }
+
+    // A failing consumer must not take a worker, or a walker, down with it
+    private void report(Consumer<? super ProbeResult<T>> consumer, ProbeResult<T> result) {
+        try {
+            consumer.accept(result);
+        }
+        catch (RuntimeException ex) {
+            if (result.isSuccess()) failures.incrementAndGet();
+        }
+    }
+
+    private class Walk extends RecursiveAction {
+
+        private final Path directory;
+        private final BlockingQueue<Path> queue;
+        private final Consumer<? super ProbeResult<T>> consumer;
+
+        private Walk(Path directory, BlockingQueue<Path> queue, Consumer<? super ProbeResult<T>> consumer) {
+            this.directory = directory;
+            this.queue = queue;
+            this.consumer = consumer;
+        }
+
+        @Override
+        protected void compute() {
+            List<Walk> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (Thread.currentThread().isInterrupted()) return;
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    }
+                    catch (IOException ex) {
+                        failures.incrementAndGet();
+                        report(consumer, ProbeResult.failure(entry, ex));
+                        continue;
+                    }
+                    if (attributes.isDirectory()) subdirectories.add(new Walk(entry, queue, consumer));
+                    else if (attributes.isRegularFile() && filter.test(entry)) queue.put(entry);
+                }
+            }
+            catch (IOException | DirectoryIteratorException ex) {
+                failures.incrementAndGet();
+                IOException cause = ex instanceof DirectoryIteratorException ? ((DirectoryIteratorException) ex).getCause() : (IOException) ex;
+                report(consumer, ProbeResult.failure(directory, cause));
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            invokeAll(subdirectories);
+        }
+    }
+
+    /**
+     * Running totals of a scan.
+     */
+    public static final class Totals {
+
+        private final long files;
+        private final long failures;
+        private final Duration duration;
+
+        private Totals(long files, long failures, Duration duration) {
+            this.files = files;
+            this.failures = failures;
+            this.duration = duration;
+        }
+
+        /**
+         * Gets the number of files probed so far.
+         *
+         * @return the probed file count, including failures
+         */
+        public long getFiles() {
+            return files;
+        }
+
+        /**
+         * Gets the number of failed probes and unreadable directories.
+         *
+         * @return the failure count
+         */
+        public long getFailures() {
+            return failures;
+        }
+
+        /**
+         * Gets the sum of the durations of the successfully probed files.
+         *
+         * @return the total duration
+         */
+        public Duration getDuration() {
+            return duration;
+        }
+
+        @Override
+        public String toString() {
+            return files + " files, " + failures + " failures, " + duration;
+        }
+    }
+
+    //__________________________________________________________________________
+    // Filters
+
+    /**
+     * Creates a filter accepting files with a common video extension, such as
+     * mp4, mkv or avi. This is the default filter of scanners.
+     *
+     * @return the filter
+     */
+    public static Predicate<Path> videoFilter() {
+        return extensionFilter(VIDEO_EXTENSIONS.toArray(new String[0]));
+    }
+
+    /**
+     * Creates a filter accepting files whose extension is among the given ones,
+     * regardless of case.
+     *
+     * @param extensions the accepted extensions, without the leading dot
+     * @return the filter
+     */
+    public static Predicate<Path> extensionFilter(String... extensions) {
+        Set<String> accepted = new HashSet<>();
+        for (String extension : extensions)
+            accepted.add(extension.toLowerCase(Locale.ROOT));
+
+        return path -> {
+            String name = path.getFileName().toString();
+            int dot = name.lastIndexOf('.');
+            return dot >= 0 && accepted.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+        };
+    }
+
+    /**
+     * Creates a filter accepting files whose first bytes match the signature
+     * of a common video container: ISO BMFF (MP4, MOV...), Matroska/WebM,
+     * AVI, ASF/WMV, FLV, MPEG program and transport streams, and Ogg.
+     * Unreadable files are rejected.
+     *
+     * @return the filter
+     */
+    public static Predicate<Path> magicFilter() {
+        return path -> {
+            ByteBuffer header = ByteBuffer.allocate(TS_PACKET + 1);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                while (header.hasRemaining() && channel.read(header) >= 0) {
+                }
+            }
+            catch (IOException ex) {
+                return false;
+            }
+            return header.position() >= 4 && isMediaSignature(header.array(), header.position());
+        };
+    }
+
+    private static boolean isMediaSignature(byte[] b, int length) {
+        int first = (b[0] & 0xFF) << 24 | (b[1] & 0xFF) << 16 | (b[2] & 0xFF) << 8 | (b[3] & 0xFF);
+        switch (first) {
+            case 0x1A45DFA3: // EBML
+            case 0x3026B275: // ASF
+            case 0x000001BA: // MPEG-PS pack
+            case 0x000001B3: // MPEG video sequence
+            case 0x4F676753: // OggS
+                return true;
+            case 0x52494646: // RIFF....AVI
+                return length >= 12 && b[8] == 'A' && b[9] == 'V' && b[10] == 'I';
+            default:
+        }
+        if (b[0] == 'F' && b[1] == 'L' && b[2] == 'V') return true;
+        if (length > TS_PACKET && b[0] == 0x47 && b[TS_PACKET] == 0x47) return true; // MPEG-TS sync bytes
+        if (length >= 8) {
+            String type = new String(b, 4, 4, StandardCharsets.ISO_8859_1);
+            return type.equals("ftyp") || type.equals("moov") || type.equals("mdat") || type.equals("wide") || type.equals("free");
+        }
+        return false;
+    }
+}
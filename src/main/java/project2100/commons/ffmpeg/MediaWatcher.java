@@ -0,0 +1,312 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.ffmpeg;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the probe results of the media files under a set of directories up to
+ * date, by watching them through a {@link WatchService}.
+ * <p>
+ * Bursts of create and modify events on a file are coalesced: a file is only
+ * probed once no event has been seen for the quiet period and its size and
+ * modification time have stopped changing, so files being copied are probed
+ * once, after the copy ends. Deleted files are dropped from the view. The
+ * cost of keeping the view current is thus proportional to the churn, not to
+ * the size of the library; only registration scans the tree.
+ *
+ * @author Project2100
+ * @param <T> the type of the probed values
+ */
+public class MediaWatcher<T> implements Closeable {
+
+    /**
+     * Receiver of the changes to the view, notified from the watcher's
+     * threads.
+     *
+     * @param <T> the type of the probed values
+     */
+    public interface Listener<T> {
+
+        /**
+         * Notified when a file has been (re)probed.
+         *
+         * @param result the probe outcome
+         */
+        void updated(ProbeResult<T> result);
+
+        /**
+         * Notified when a file has been deleted or moved away.
+         *
+         * @param file the removed file
+         */
+        default void removed(Path file) {
+        }
+    }
+
+    private final Probe<T> probe;
+    private final Predicate<Path> filter;
+    private final Listener<T> listener;
+    private final long quietNanos;
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+    private final Map<Path, Pending> pending = new ConcurrentHashMap<>();
+    private final Map<Path, ProbeResult<T>> results = new ConcurrentHashMap<>();
+
+    private final Thread watcher;
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(new ProcessRunner.DaemonFactory("media-watch-sweep"));
+    private final ExecutorService probes;
+
+    /**
+     * Creates a watcher probing files with a common video extension.
+     *
+     * @param probe the probe to run on changed files, best wrapped by a
+     * {@link ProbeCache} so that registration is cheap on known trees
+     * @param quietPeriod how long a file must stay untouched before probing
+     * @param listener the receiver of changes, or null
+     * @throws IOException if the watch service cannot be created
+     */
+    public MediaWatcher(Probe<T> probe, Duration quietPeriod, Listener<T> listener) throws IOException {
+        this(probe, MediaScanner.videoFilter(), quietPeriod, listener, FFProbeWrapper.defaultParallelism());
+    }
+
+    /**
+     * Creates a watcher.
+     *
+     * @param probe the probe to run on changed files, best wrapped by a
+     * {@link ProbeCache} so that registration is cheap on known trees
+     * @param filter selects the files to probe
+     * @param quietPeriod how long a file must stay untouched before probing
+     * @param listener the receiver of changes, or null
+     * @param parallelism the maximum number of concurrent probes
+     * @throws IOException if the watch service cannot be created
+     */
+    public MediaWatcher(Probe<T> probe, Predicate<Path> filter, Duration quietPeriod, Listener<T> listener, int parallelism) throws IOException {
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        this.probe = probe;
+        this.filter = filter;
+        this.listener = listener;
+        this.quietNanos = quietPeriod.toNanos();
+        this.probes = Executors.newFixedThreadPool(parallelism, new ProcessRunner.DaemonFactory("media-watch-probe"));
+
+        watchService = FileSystems.getDefault().newWatchService();
+        watcher = new Thread(this::watch, "media-watch");
+        watcher.setDaemon(true);
+        watcher.start();
+
+        long sweepMillis = Math.max(50, quietPeriod.toMillis() / 2);
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts watching the given directory and all of its subdirectories,
+     * including those created later. The matching files already present are
+     * queued for probing.
+     *
+     * @param root the directory to watch
+     * @throws IOException if the directory cannot be read or watched
+     */
+    public void register(Path root) throws IOException {
+        Path directory = root.toAbsolutePath().normalize();
+        WatchKey key = directory.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        directories.put(key, directory);
+
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries)
+                if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) register(entry);
+                else if (filter.test(entry)) touch(entry);
+        }
+    }
+
+    /**
+     * Gets the current view of the watched files.
+     *
+     * @return a live, unmodifiable map from each probed file to its latest
+     * probe outcome
+     */
+    public Map<Path, ProbeResult<T>> getResults() {
+        return Collections.unmodifiableMap(results);
+    }
+
+    /**
+     * Stops watching and abandons pending probes.
+     *
+     * @throws IOException if the watch service fails to close
+     */
+    @Override
+    public void close() throws IOException {
+        sweeper.shutdownNow();
+        probes.shutdownNow();
+        watchService.close();
+    }
+
+    // Records an event on the file, restarting its quiet period
+    private void touch(Path file) {
+        pending.computeIfAbsent(file, f -> new Pending()).lastEvent = System.nanoTime();
+    }
+
+    private void watch() {
+        try {
+            for (;;) {
+                WatchKey key = watchService.take();
+                Path directory = directories.get(key);
+                if (directory != null)
+                    for (WatchEvent<?> event : key.pollEvents())
+                        handle(directory, event);
+                if (!key.reset()) directories.remove(key);
+            }
+        }
+        catch (InterruptedException | ClosedWatchServiceException ex) {
+            // Closed
+        }
+    }
+
+    private void handle(Path directory, WatchEvent<?> event) {
+        // Events were lost, resynchronize the whole directory
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries)
+                    if (!Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS) && filter.test(entry)) touch(entry);
+            }
+            catch (IOException ex) {
+                // Directory gone, its own deletion event will follow
+            }
+            return;
+        }
+
+        Path entry = directory.resolve((Path) event.context());
+        if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+            pending.remove(entry);
+            removeUnder(entry);
+        }
+        else if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE)
+                try {
+                    register(entry);
+                }
+                catch (IOException ex) {
+                    // Deleted right after its creation
+                }
+        }
+        else if (filter.test(entry)) touch(entry);
+    }
+
+    // Drops the entry and, if it was a directory, everything below it
+    private void removeUnder(Path entry) {
+        for (Iterator<Path> files = results.keySet().iterator(); files.hasNext();) {
+            Path file = files.next();
+            if (file.startsWith(entry)) {
+                files.remove();
+                if (listener != null) listener.removed(file);
+            }
+        }
+    }
+
+    // An exception escaping a periodic task cancels its later runs, and the
+    // watcher would stop probing for good
+    private void sweep() {
+        try {
+            sweepPending();
+        }
+        catch (RuntimeException ex) {
+            // The files left pending are retried on the next sweep
+        }
+    }
+
+    // Probes the files that have been quiet long enough and whose attributes
+    // held still since the previous sweep
+    private void sweepPending() {
+        long now = System.nanoTime();
+        for (Iterator<Map.Entry<Path, Pending>> entries = pending.entrySet().iterator(); entries.hasNext();) {
+            Map.Entry<Path, Pending> entry = entries.next();
+            Pending state = entry.getValue();
+            if (now - state.lastEvent < quietNanos) continue;
+
+            Path file = entry.getKey();
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            }
+            catch (IOException ex) {
+                // Vanished, the deletion event takes care of the view
+                entries.remove();
+                continue;
+            }
+
+            long size = attributes.size();
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (size != state.size || modified != state.modified) {
+                state.size = size;
+                state.modified = modified;
+                state.lastEvent = now;
+                continue;
+            }
+
+            if (!pending.remove(file, state)) continue;
+            // Another event may have restarted the period meanwhile
+            if (state.lastEvent - now > 0) {
+                pending.putIfAbsent(file, state);
+                continue;
+            }
+            probes.execute(() -> {
+                ProbeResult<T> result = FFProbeWrapper.runProbe(probe, file);
+                if (!Files.exists(file)) return;
+                results.put(file, result);
+                if (listener != null) listener.updated(result);
+            });
+        }
+    }
+
+    private static class Pending {
+
+        private volatile long lastEvent;
+        private long size = -1;
+        private long modified = -1;
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.ffmpeg;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A least-recently-used cache of probe results, optionally persisted to a
+ * binary store file. Entries are keyed by the absolute path of the probed file
+ * and are only considered valid while the file keeps the same size and
+ * last-modified time.
+ * <p>
+ * Instances are thread-safe; the probe itself runs outside of the cache's
+ * lock, so concurrent misses on distinct files do not serialize.
+ *
+ * @implnote The store layout is a header (magic, version, entry count)
+ * followed by one record per entry, eldest first: path, size, modification
+ * time and the codec-encoded value.
+ *
+ * @author Project2100
+ * @param <T> the type of the cached values
+ */
+public class ProbeCache<T> {
+
+    /**
+     * Binary encoding of cached values in the store file.
+     *
+     * @param <T> the type of the encoded values
+     */
+    public interface Codec<T> {
+
+        void write(DataOutput out, T value) throws IOException;
+
+        T read(DataInput in) throws IOException;
+    }
+
+    /**
+     * Codec for integer values, such as the ones returned by
+     * {@link FFProbeWrapper#getVideoLength(Path)}.
+     */
+    public static final Codec<Integer> INTEGER = new Codec<Integer>() {
+        @Override
+        public void write(DataOutput out, Integer value) throws IOException {
+            out.writeInt(value);
+        }
+
+        @Override
+        public Integer read(DataInput in) throws IOException {
+            return in.readInt();
+        }
+    };
+
+    private static final int MAGIC = 0x50324343; // "P2CC"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path store;
+    private final Codec<T> codec;
+    private final LinkedHashMap<String, Entry<T>> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a memory-only cache.
+     *
+     * @param codec the value codec, unused until a store is given
+     * @param capacity the maximum number of entries
+     */
+    public ProbeCache(Codec<T> codec, int capacity) {
+        this.store = null;
+        this.codec = codec;
+        this.entries = new LruMap<>(capacity);
+    }
+
+    /**
+     * Creates a cache backed by the given store file, loading its contents if
+     * it exists. A store that cannot be decoded, or was written by an
+     * incompatible version, is discarded and the cache starts empty.
+     *
+     * @param store the store file
+     * @param codec the value codec
+     * @param capacity the maximum number of entries
+     * @throws IOException if the store exists but cannot be read
+     */
+    public ProbeCache(Path store, Codec<T> codec, int capacity) throws IOException {
+        this.store = store.toAbsolutePath();
+        this.codec = codec;
+        this.entries = new LruMap<>(capacity);
+        if (Files.isRegularFile(this.store)) load();
+    }
+
+    /**
+     * Gets the cached value for the given file, running the probe and caching
+     * its result if the entry is missing or stale.
+     *
+     * @param source the probed file
+     * @param probe the probe producing the value on a miss
+     * @return the value for the file
+     * @throws IOException if the file's attributes cannot be read or the probe
+     * fails; failures are not cached
+     */
+    public T get(Path source, Probe<T> probe) throws IOException {
+        String key = source.toAbsolutePath().normalize().toString();
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+
+        synchronized (this) {
+            Entry<T> entry = entries.get(key);
+            if (entry != null && entry.size == size && entry.modified == modified) {
+                hits.increment();
+                return entry.value;
+            }
+        }
+        misses.increment();
+
+        T value = probe.probe(source);
+        synchronized (this) {
+            entries.put(key, new Entry<>(size, modified, value));
+        }
+        return value;
+    }
+
+    /**
+     * Wraps the given probe so that it goes through this cache, e.g. for use
+     * with {@link FFProbeWrapper#probeAll}.
+     *
+     * @param probe the probe to wrap
+     * @return a caching view of the probe
+     */
+    public Probe<T> wrap(Probe<T> probe) {
+        return source -> get(source, probe);
+    }
+
+    /**
+     * Drops the entry for the given file, if any.
+     *
+     * @param source the probed file
+     */
+    public synchronized void invalidate(Path source) {
+        entries.remove(source.toAbsolutePath().normalize().toString());
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of lookups served from this cache since its creation.
+     *
+     * @return the hit count
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of lookups that required a probe since this cache's
+     * creation, including those whose entry was stale.
+     *
+     * @return the miss count
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the fraction of lookups served from this cache.
+     *
+     * @return the hit ratio, or 0 if no lookup was made yet
+     */
+    public double getHitRatio() {
+        long h = hits.sum(), total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Writes the current contents of the cache to its store file. The file is
+     * replaced atomically where the file system allows it, so that a crash
+     * never leaves a truncated store behind.
+     *
+     * @throws IOException if writing fails
+     * @throws IllegalStateException if this cache has no store
+     */
+    public synchronized void save() throws IOException {
+        if (store == null) throw new IllegalStateException("Memory-only cache");
+
+        Path parent = store.getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, store.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry<T>> e : entries.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    out.writeLong(e.getValue().size);
+                    out.writeLong(e.getValue().modified);
+                    codec.write(out, e.getValue().value);
+                }
+            }
+            try {
+                Files.move(temp, store, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, store, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Entries are stored eldest first, so reinserting them in order restores
+    // the recency ranking along with the contents
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(store), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return;
+
+            for (int count = in.readInt(); count > 0; count--) {
+                String key = in.readUTF();
+                long size = in.readLong();
+                long modified = in.readLong();
+                entries.put(key, new Entry<>(size, modified, codec.read(in)));
+            }
+        }
+        catch (EOFException | UTFDataFormatException ex) {
+            // Truncated or corrupted store, start over
+            entries.clear();
+        }
+    }
+
+    private static class Entry<T> {
+
+        private final long size;
+        private final long modified;
+        private final T value;
+
+        private Entry(long size, long modified, T value) {
+            this.size = size;
+            this.modified = modified;
+            this.value = value;
+        }
+    }
+
+    private static class LruMap<K, V> extends LinkedHashMap<K, V> {
+
+        private final int capacity;
+
+        private LruMap(int capacity) {
+            super(16, 0.75f, true);
+            if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > capacity;
+        }
+    }
+}
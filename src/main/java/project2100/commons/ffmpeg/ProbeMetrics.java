@@ -0,0 +1,181 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.ffmpeg;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters, gauges and latency histograms of the external processes run
+ * on behalf of the probes in this package. Each completed process is also
+ * reported as a JDK Flight Recorder event, named
+ * <code>project2100.ffmpeg.Process</code>, carrying the probed file, queue
+ * and spawn times, exit code and outcome.
+ *
+ * @author Project2100
+ * @see FFProbeWrapper#getMetrics()
+ */
+public final class ProbeMetrics {
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final LongAdder launched = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LatencyHistogram spawnLatency = new LatencyHistogram();
+    private final LatencyHistogram probeLatency = new LatencyHistogram();
+
+    ProbeMetrics() {
+    }
+
+    /**
+     * Gets the number of probes waiting for a process slot.
+     *
+     * @return the current queue length
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * Gets the number of live child processes.
+     *
+     * @return the current in-flight process count
+     */
+    public int getRunning() {
+        return running.get();
+    }
+
+    /**
+     * Gets the number of child processes started so far.
+     *
+     * @return the launch count
+     */
+    public long getLaunched() {
+        return launched.sum();
+    }
+
+    /**
+     * Gets the number of probes whose process exited normally and whose
+     * output was handled.
+     *
+     * @return the success count
+     */
+    public long getSucceeded() {
+        return succeeded.sum();
+    }
+
+    /**
+     * Gets the number of processes that failed to launch, exited abnormally or
+     * whose output could not be handled.
+     *
+     * @return the failure count, excluding timeouts and cancellations
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * Gets the number of processes killed for running past their timeout.
+     *
+     * @return the timeout count
+     */
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    /**
+     * Gets the number of probes cancelled, whether queued or running.
+     *
+     * @return the cancellation count
+     */
+    public long getCancelled() {
+        return cancelled.sum();
+    }
+
+    /**
+     * Gets the distribution of the time taken by the OS to start a child
+     * process.
+     *
+     * @return the spawn latency histogram
+     */
+    public LatencyHistogram getSpawnLatency() {
+        return spawnLatency;
+    }
+
+    /**
+     * Gets the distribution of the time from submission to completion of a
+     * probe, queueing included.
+     *
+     * @return the end-to-end latency histogram
+     */
+    public LatencyHistogram getProbeLatency() {
+        return probeLatency;
+    }
+
+    void submitted() {
+        queued.incrementAndGet();
+    }
+
+    void dequeued() {
+        queued.decrementAndGet();
+    }
+
+    void spawned(long nanos) {
+        launched.increment();
+        running.incrementAndGet();
+        spawnLatency.record(nanos);
+    }
+
+    void exited() {
+        running.decrementAndGet();
+    }
+
+    void completed(ProcessEvent.Outcome outcome, long nanos) {
+        switch (outcome) {
+            case SUCCEEDED:
+                succeeded.increment();
+                break;
+            case TIMED_OUT:
+                timedOut.increment();
+                break;
+            case CANCELLED:
+                cancelled.increment();
+                break;
+            default:
+                failed.increment();
+        }
+        probeLatency.record(nanos);
+    }
+
+    @Override
+    public String toString() {
+        return "queued=" + getQueued() + " running=" + getRunning() + " launched=" + getLaunched()
+                + " succeeded=" + getSucceeded() + " failed=" + getFailed() + " timedOut=" + getTimedOut() + " cancelled=" + getCancelled()
+                + " spawn[" + spawnLatency + "] probe[" + probeLatency + "]";
+    }
+}
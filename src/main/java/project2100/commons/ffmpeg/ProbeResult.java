@@ -0,0 +1,105 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.ffmpeg;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The outcome of a {@link Probe} over a single file: either the extracted
+ * value or the failure that prevented its extraction.
+ *
+ * @author Project2100
+ * @param <T> the type of the extracted value
+ */
+public final class ProbeResult<T> {
+
+    private final Path source;
+    private final T value;
+    private final IOException error;
+
+    private ProbeResult(Path source, T value, IOException error) {
+        this.source = source;
+        this.value = value;
+        this.error = error;
+    }
+
+    static <T> ProbeResult<T> success(Path source, T value) {
+        return new ProbeResult<>(source, value, null);
+    }
+
+    static <T> ProbeResult<T> failure(Path source, IOException error) {
+        return new ProbeResult<>(source, null, error);
+    }
+
+    /**
+     * Gets the file this result refers to.
+     *
+     * @return the probed file
+     */
+    public Path getSource() {
+        return source;
+    }
+
+    /**
+     * Tells whether the probe completed normally.
+     *
+     * @return true if a value is available
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * Gets the extracted value, rethrowing the probe failure if there is one.
+     *
+     * @return the extracted value
+     * @throws IOException if the probe failed, having the original failure as
+     * cause
+     */
+    public T get() throws IOException {
+        if (error != null) throw new IOException(error.getMessage(), error);
+        return value;
+    }
+
+    // Unchecked access for callers that already tested isSuccess()
+    T value() {
+        return value;
+    }
+
+    /**
+     * Gets the failure of the probe.
+     *
+     * @return the failure, or null if the probe succeeded
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return source + (error == null ? " -> " + value : " !! " + error);
+    }
+}
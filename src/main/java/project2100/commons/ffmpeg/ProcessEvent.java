@@ -0,0 +1,76 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.ffmpeg;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event spanning the life of a child process, from the
+ * submission of its command to the completion of its result. The span thus
+ * includes the wait for a free process slot, given apart as the queue time,
+ * so that commands cancelled or timed out before launch are recorded too.
+ *
+ * @author Project2100
+ */
+@Name("project2100.ffmpeg.Process")
+@Label("FFmpeg Process")
+@Category({"Project2100", "FFmpeg"})
+@Description("An FFmpeg or FFProbe process run by a probe")
+@StackTrace(false)
+final class ProcessEvent extends Event {
+
+    enum Outcome {
+        SUCCEEDED, FAILED, TIMED_OUT, CANCELLED
+    }
+
+    @Label("Executable")
+    String executable;
+
+    @Label("Source")
+    @Description("The media file given to the process")
+    String source;
+
+    @Label("Queue Time")
+    @Description("Time spent waiting for a free process slot, included in the duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long queueTime;
+
+    @Label("Spawn Time")
+    @Description("Time taken by the OS to start the process")
+    @Timespan(Timespan.NANOSECONDS)
+    long spawnTime;
+
+    @Label("Exit Code")
+    int exitCode;
+
+    @Label("Outcome")
+    String outcome;
+}
@@ -0,0 +1,322 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.ffmpeg;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs external commands asynchronously, keeping at most a fixed number of
+ * child processes alive at once. Commands submitted beyond that limit wait in
+ * a queue without holding any thread or file descriptor.
+ * <p>
+ * Both output streams of every process are drained concurrently, so a chatty
+ * stderr can never stall the child; the exit code is checked, and the process
+ * is killed whenever its future completes before it exits, be it because of
+ * a timeout, a cancellation or a failure in the output handler.
+ * <p>
+ * Every job is accounted for in the runner's {@link ProbeMetrics} and
+ * reported as a {@link ProcessEvent}.
+ *
+ * @author Project2100
+ */
+final class ProcessRunner {
+
+    /**
+     * Consumes the standard output of a process, producing the result of the
+     * command.
+     *
+     * @param <T> the type of the result
+     */
+    @FunctionalInterface
+    interface OutputHandler<T> {
+
+        T handle(InputStream stdout) throws IOException;
+    }
+
+    // Trailing stderr kept for error messages
+    private static final int STDERR_LIMIT = 4096;
+
+    private final String missingMessage;
+    private final Semaphore slots;
+    private final Queue<Job<?>> pending = new ConcurrentLinkedQueue<>();
+    private final ExecutorService io = Executors.newCachedThreadPool(new DaemonFactory("process-io"));
+    private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new DaemonFactory("process-timer"));
+    private final ProbeMetrics metrics = new ProbeMetrics();
+
+    /**
+     * Creates a runner.
+     *
+     * @param missingMessage the message of the exception reported when the
+     * executable cannot be found, having the launch failure as cause
+     * @param maxProcesses the maximum number of live child processes
+     */
+    ProcessRunner(String missingMessage, int maxProcesses) {
+        this.missingMessage = missingMessage;
+        if (maxProcesses < 1) throw new IllegalArgumentException("Process limit must be positive: " + maxProcesses);
+        slots = new Semaphore(maxProcesses);
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Queues the given command for execution. The timeout starts when the
+     * process is actually launched; the command is not launched at all if the
+     * returned future is cancelled while still queued.
+     *
+     * @param <T> the type of the result
+     * @param command the command line
+     * @param handler the consumer of the process' standard output
+     * @param timeout the maximum running time of the process
+     * @param unit the unit of the timeout
+     * @return a future completing with the handler's result if the process
+     * exits with code 0, or exceptionally with an {@link IOException} or a
+     * {@link TimeoutException}
+     */
+    <T> CompletableFuture<T> submit(String[] command, OutputHandler<T> handler, long timeout, TimeUnit unit) {
+        Job<T> job = new Job<>(command.clone(), handler, unit.toNanos(timeout));
+        // Spans the queue wait too, see ProcessEvent
+        job.event.begin();
+        metrics.submitted();
+        job.result.whenComplete((value, ex) -> completed(job, ex));
+        pending.add(job);
+        launchPending();
+        return job.result;
+    }
+
+    private void launchPending() {
+        for (;;) {
+            if (pending.isEmpty() || !slots.tryAcquire()) return;
+            Job<?> job = pending.poll();
+            if (job == null) slots.release();
+            else launch(job);
+        }
+    }
+
+    ProbeMetrics getMetrics() {
+        return metrics;
+    }
+
+    private void completed(Job<?> job, Throwable failure) {
+        ProcessEvent.Outcome outcome;
+        if (failure == null) outcome = ProcessEvent.Outcome.SUCCEEDED;
+        else if (failure instanceof CancellationException) outcome = ProcessEvent.Outcome.CANCELLED;
+        else if (failure instanceof TimeoutException) outcome = ProcessEvent.Outcome.TIMED_OUT;
+        else outcome = ProcessEvent.Outcome.FAILED;
+        metrics.completed(outcome, System.nanoTime() - job.submitted);
+
+        ProcessEvent event = job.event;
+        event.end();
+        if (event.shouldCommit()) {
+            event.executable = job.command[0];
+            event.source = sourceOf(job.command);
+            event.queueTime = job.launched == 0 ? System.nanoTime() - job.submitted : job.launched - job.submitted;
+            event.spawnTime = job.spawnTime;
+            Process process = job.process;
+            event.exitCode = process == null || process.isAlive() ? -1 : process.exitValue();
+            event.outcome = outcome.name();
+            event.commit();
+        }
+    }
+
+    // FFmpeg takes its input after -i, FFProbe as its last argument
+    private static String sourceOf(String[] command) {
+        for (int i = 1; i < command.length - 1; i++)
+            if (command[i].equals("-i")) return command[i + 1];
+        return command[command.length - 1];
+    }
+
+    private void release() {
+        slots.release();
+        launchPending();
+    }
+
+    // Returns the slot itself when no process is started, so that the loop in
+    // launchPending goes on with the next job rather than recursing into it
+    private <T> void launch(Job<T> job) {
+        metrics.dequeued();
+        if (job.result.isDone()) {
+            slots.release();
+            return;
+        }
+
+        Process process;
+        job.launched = System.nanoTime();
+        try {
+            process = new ProcessBuilder(job.command).start();
+            job.spawnTime = System.nanoTime() - job.launched;
+            job.process = process;
+            metrics.spawned(job.spawnTime);
+        }
+        catch (IOException ex) {
+            slots.release();
+            String message = ex.getMessage();
+            job.result.completeExceptionally(message != null && message.contains("error=2") ? new IOException(missingMessage, ex) : ex);
+            return;
+        }
+        // Nothing is ever written to the child
+        try {
+            process.getOutputStream().close();
+        }
+        catch (IOException ex) {
+        }
+
+        CompletableFuture<Process> exit = process.onExit();
+        exit.whenCompleteAsync((p, ex) -> {
+            metrics.exited();
+            release();
+        }, io);
+
+        ScheduledFuture<?> deadline = timer.schedule(() -> job.result.completeExceptionally(
+                new TimeoutException(job.command[0] + " timed out after " + TimeUnit.NANOSECONDS.toMillis(job.timeoutNanos) + " ms")),
+                job.timeoutNanos, TimeUnit.NANOSECONDS);
+        job.result.whenComplete((value, ex) -> {
+            deadline.cancel(false);
+            if (process.isAlive()) process.destroyForcibly();
+        });
+
+        CompletableFuture<T> output = CompletableFuture.supplyAsync(() -> {
+            try (InputStream stdout = process.getInputStream()) {
+                T value = job.handler.handle(stdout);
+                // Whatever the handler left unread must still be consumed,
+                // or the child may block on a full pipe
+                byte[] buffer = new byte[8192];
+                while (stdout.read(buffer) >= 0) {
+                }
+                return value;
+            }
+            catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }, io);
+        CompletableFuture<String> errors = CompletableFuture.supplyAsync(() -> drainTail(process.getErrorStream()), io);
+
+        // A failing handler ends the job right away, killing the process
+        output.whenComplete((value, ex) -> {
+            if (ex != null) job.result.completeExceptionally(unwrap(ex));
+        });
+        CompletableFuture.allOf(output, errors, exit).whenComplete((done, ex) -> {
+            if (ex != null) job.result.completeExceptionally(unwrap(ex));
+            else if (process.exitValue() != 0)
+                job.result.completeExceptionally(new IOException(
+                        job.command[0] + " exited with code " + process.exitValue() + ": " + errors.join().trim()));
+            else job.result.complete(output.join());
+        });
+    }
+
+    // Reads the stream to its end, keeping only its last STDERR_LIMIT bytes
+    private static String drainTail(InputStream stream) {
+        byte[] tail = new byte[STDERR_LIMIT];
+        int length = 0;
+        byte[] buffer = new byte[8192];
+        try (InputStream in = stream) {
+            for (int read; (read = in.read(buffer)) >= 0;)
+                if (read >= STDERR_LIMIT) {
+                    System.arraycopy(buffer, read - STDERR_LIMIT, tail, 0, STDERR_LIMIT);
+                    length = STDERR_LIMIT;
+                }
+                else {
+                    int keep = Math.min(length, STDERR_LIMIT - read);
+                    System.arraycopy(tail, length - keep, tail, 0, keep);
+                    System.arraycopy(buffer, 0, tail, keep, read);
+                    length = keep + read;
+                }
+        }
+        catch (IOException ex) {
+            // The process was killed, report what was collected so far
+        }
+        return new String(tail, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+
+    /**
+     * Handler collecting the whole standard output as bytes.
+     *
+     * @param stdout the output stream of the process
+     * @return the bytes read
+     * @throws IOException if reading fails
+     */
+    static byte[] readAll(InputStream stdout) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int read; (read = stdout.read(buffer)) >= 0;)
+            bytes.write(buffer, 0, read);
+        return bytes.toByteArray();
+    }
+
+    private static class Job<T> {
+
+        private final String[] command;
+        private final OutputHandler<T> handler;
+        private final long timeoutNanos;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final ProcessEvent event = new ProcessEvent();
+        private final long submitted = System.nanoTime();
+        private volatile long launched;
+        private volatile long spawnTime;
+        private volatile Process process;
+
+        private Job(String[] command, OutputHandler<T> handler, long timeoutNanos) {
+            this.command = command;
+            this.handler = handler;
+            this.timeoutNanos = timeoutNanos;
+        }
+    }
+
+    static class DaemonFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.ffmpeg;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+
+/**
+ * Grabs representative frames of videos through FFmpeg, piping them as PNG
+ * over its standard output, with no temporary files.
+ * <p>
+ * Thumbnails are kept in a memory cache bounded by their total pixel size,
+ * and optionally in a directory of PNG files keyed by the video's path,
+ * size and modification time. Concurrent requests for the same video share
+ * a single extraction, and at most a fixed number of FFmpeg instances run at
+ * once.
+ *
+ * @author Project2100
+ */
+public class ThumbnailExtractor {
+
+    public static final String ffmpegMissingMessage = "FFmpeg not found!";
+
+    /**
+     * Default running time limit for a single FFmpeg instance, in seconds.
+     */
+    public static final long DEFAULT_TIMEOUT = 30;
+
+    // Decoding is CPU-bound, unlike probing
+    static final ProcessRunner RUNNER = new ProcessRunner(ffmpegMissingMessage, Math.max(1, FFProbeWrapper.defaultParallelism() / 2));
+
+    private final int width;
+    private final Path cacheDirectory;
+    private final long memoryBudget;
+
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryUsed;
+    private final Map<String, CompletableFuture<BufferedImage>> inFlight = new ConcurrentHashMap<>();
+    private final ExecutorService lookups = Executors.newFixedThreadPool(2, new ProcessRunner.DaemonFactory("thumbnail-lookup"));
+
+    /**
+     * Creates an extractor.
+     *
+     * @param width the width of the thumbnails, their height keeping the
+     * aspect ratio of the video
+     * @param cacheDirectory the directory of the disk cache, or null to keep
+     * thumbnails in memory only
+     * @param memoryBudget the maximum total size of the thumbnails held in
+     * memory, in bytes, counting 4 bytes per pixel
+     */
+    public ThumbnailExtractor(int width, Path cacheDirectory, long memoryBudget) {
+        if (width < 1) throw new IllegalArgumentException("Width must be positive: " + width);
+        this.width = width;
+        this.cacheDirectory = cacheDirectory;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Gets the live metrics of the FFmpeg instances run by extractors.
+     *
+     * @return the FFmpeg process metrics
+     */
+    public static ProbeMetrics getMetrics() {
+        return RUNNER.getMetrics();
+    }
+
+    /**
+     * Gets the thumbnail of the given video from the memory cache, without
+     * blocking and without checking whether it is stale. Safe to call from
+     * the Event Dispatch Thread.
+     *
+     * @param source the video file
+     * @return the cached thumbnail, or null if not in memory
+     */
+    public BufferedImage getCached(Path source) {
+        synchronized (memory) {
+            Entry entry = memory.get(key(source));
+            return entry == null ? null : entry.image;
+        }
+    }
+
+    /**
+     * Gets the thumbnail of the given video, from the memory cache if it is
+     * current, then from the disk cache, and extracting it as a last resort.
+     * The calling thread never blocks.
+     *
+     * @param source the video file
+     * @return a future of the thumbnail
+     */
+    public CompletableFuture<BufferedImage> getThumbnail(Path source) {
+        String key = key(source);
+        CompletableFuture<BufferedImage> shared = inFlight.get(key);
+        if (shared != null) return shared;
+
+        CompletableFuture<BufferedImage> created = new CompletableFuture<>();
+        shared = inFlight.putIfAbsent(key, created);
+        if (shared != null) return shared;
+
+        created.whenComplete((image, ex) -> inFlight.remove(key, created));
+        lookups.execute(() -> {
+            try {
+                resolve(source, key, created);
+            }
+            catch (IOException | RuntimeException ex) {
+                created.completeExceptionally(ex);
+            }
+        });
+        return created;
+    }
+
+    /**
+     * Drops the thumbnail of the given video from the memory cache.
+     *
+     * @param source the video file
+     */
+    public void invalidate(Path source) {
+        synchronized (memory) {
+            Entry entry = memory.remove(key(source));
+            if (entry != null) memoryUsed -= entry.weight;
+        }
+    }
+
+    private void resolve(Path source, String key, CompletableFuture<BufferedImage> result) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis();
+
+        synchronized (memory) {
+            Entry entry = memory.get(key);
+            if (entry != null && entry.modified == modified) {
+                result.complete(entry.image);
+                return;
+            }
+        }
+
+        Path cached = cacheDirectory == null ? null : cacheDirectory.resolve(
+                Integer.toHexString(key.hashCode()) + "-" + Long.toHexString(modified) + "-" + Long.toHexString(attributes.size()) + "-" + width + ".png");
+        if (cached != null && Files.isRegularFile(cached)) {
+            BufferedImage image = ImageIO.read(cached.toFile());
+            if (image != null) {
+                remember(key, modified, image);
+                result.complete(image);
+                return;
+            }
+        }
+
+        CompletableFuture<byte[]> png = extractPng(source, width, DEFAULT_TIMEOUT, TimeUnit.SECONDS);
+        // Cancelling the request kills FFmpeg
+        result.whenComplete((image, ex) -> png.cancel(true));
+        png.whenCompleteAsync((bytes, ex) -> {
+            if (ex != null) {
+                result.completeExceptionally(ex instanceof CompletionException ? ex.getCause() : ex);
+                return;
+            }
+            try {
+                BufferedImage image = decode(bytes);
+                if (cached != null) store(cached, bytes);
+                remember(key, modified, image);
+                result.complete(image);
+            }
+            catch (IOException ex2) {
+                result.completeExceptionally(ex2);
+            }
+        }, lookups);
+    }
+
+    private void remember(String key, long modified, BufferedImage image) {
+        Entry entry = new Entry(modified, image);
+        synchronized (memory) {
+            Entry old = memory.put(key, entry);
+            if (old != null) memoryUsed -= old.weight;
+            memoryUsed += entry.weight;
+
+            for (Iterator<Entry> eldest = memory.values().iterator(); memoryUsed > memoryBudget && eldest.hasNext();) {
+                Entry evicted = eldest.next();
+                // Keep at least the newest thumbnail, however large
+                if (evicted == entry) break;
+                eldest.remove();
+                memoryUsed -= evicted.weight;
+            }
+        }
+    }
+
+    private static void store(Path target, byte[] png) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, png);
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static String key(Path source) {
+        return source.toAbsolutePath().normalize().toString();
+    }
+
+    //__________________________________________________________________________
+    // Extraction
+
+    /**
+     * Extracts a representative frame of the given video as PNG bytes. The
+     * frame is picked by FFmpeg's <code>thumbnail</code> filter around the
+     * first tenth of the video, when its duration can be read from the
+     * container header, or from its start otherwise.
+     *
+     * @param source the video file
+     * @param width the width of the thumbnail
+     * @param timeout the maximum running time of FFmpeg
+     * @param unit the unit of the timeout
+     * @return a future of the PNG-encoded thumbnail; cancelling it kills
+     * FFmpeg
+     */
+    public static CompletableFuture<byte[]> extractPng(Path source, int width, long timeout, TimeUnit unit) {
+        long offsetMillis = 0;
+        try {
+            Optional<Duration> duration = ContainerDurationReader.readDuration(source);
+            if (duration.isPresent()) offsetMillis = duration.get().toMillis() / 10;
+        }
+        catch (IOException ex) {
+            // FFmpeg will report the actual problem
+        }
+
+        String[] command = {
+            "ffmpeg",
+            "-v", // log level
+            "error", //  ""
+            "-ss", // input seek, before decoding
+            String.format(Locale.ROOT, "%d.%03d", offsetMillis / 1000, offsetMillis % 1000),
+            "-i", // input
+            source.toAbsolutePath().toString(),
+            "-frames:v", // a single frame
+            "1", //  ""
+            "-vf", // pick a representative frame, then scale it
+            "thumbnail,scale=" + width + ":-2", //  ""
+            "-f", // stream images to the pipe
+            "image2pipe", //  ""
+            "-c:v", // as PNG
+            "png", //  ""
+            "pipe:1"
+        };
+        return RUNNER.submit(command, ProcessRunner::readAll, timeout, unit);
+    }
+
+    private static BufferedImage decode(byte[] png) throws IOException {
+        if (png.length == 0) throw new IOException("FFmpeg produced no frame");
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        if (image == null) throw new IOException("FFmpeg produced an unreadable frame");
+        return image;
+    }
+
+    private static class Entry {
+
+        private final long modified;
+        private final BufferedImage image;
+        private final long weight;
+
+        private Entry(long modified, BufferedImage image) {
+            this.modified = modified;
+            this.image = image;
+            this.weight = 4L * image.getWidth() * image.getHeight();
+        }
+    }
+}
@@ -25,8 +25,14 @@
 package project2100.commons.swing;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.EventListener;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 import javax.swing.AbstractListModel;
 import javax.swing.ListModel;
 import javax.swing.event.EventListenerList;
@@ -76,10 +82,22 @@ public class ArrayListModel<E> extends ArrayList<E> implements ListModel<E> {
     @Override
     public E set(int index, E element) {
         E old = super.set(index, element);
-        fireContentsChanged(this, index, index);
+        changed(size(), index, size() - index - 1);
         return old;
     }
 
+    /**
+     * Appends the specified element at the end of this list.
+     *
+     * @param element element to be appended
+     * @return true
+     */
+    @Override
+    public boolean add(E element) {
+        append(element);
+        return true;
+    }
+
     /**
      * Inserts the specified element at the specified position in this list.
      *
@@ -91,7 +109,7 @@ public class ArrayListModel<E> extends ArrayList<E> implements ListModel<E> {
     @Override
     public void add(int index, E element) {
         super.add(index, element);
-        fireIntervalAdded(this, index, index);
+        changed(size() - 1, index, size() - index - 1);
     }
 
     /**
@@ -102,17 +120,243 @@ public class ArrayListModel<E> extends ArrayList<E> implements ListModel<E> {
     public void append(E element) {
         int index = size();
         super.add(element);
-        fireIntervalAdded(this, index, index);
+        changed(index, index, 0);
+    }
+
+    /**
+     * Appends all of the elements in the specified collection at the end of
+     * this list, firing a single event.
+     *
+     * @param c collection containing elements to be added to this list
+     * @return true if this list changed as a result of the call
+     */
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        int oldSize = size();
+        if (!super.addAll(c)) return false;
+        changed(oldSize, oldSize, 0);
+        return true;
+    }
+
+    /**
+     * Inserts all of the elements in the specified collection into this list
+     * at the specified position, firing a single event.
+     *
+     * @param index index at which to insert the first element
+     * @param c collection containing elements to be added to this list
+     * @return true if this list changed as a result of the call
+     * @throws IndexOutOfBoundsException
+     */
+    @Override
+    public boolean addAll(int index, Collection<? extends E> c) {
+        int oldSize = size();
+        if (!super.addAll(index, c)) return false;
+        changed(oldSize, index, oldSize - index);
+        return true;
+    }
+
+    /**
+     * Removes the element at the specified position in this list.
+     *
+     * @param index the index of the element to be removed
+     * @return the element that was removed from the list
+     * @throws IndexOutOfBoundsException
+     */
+    @Override
+    public E remove(int index) {
+        E old = super.remove(index);
+        changed(size() + 1, index, size() - index);
+        return old;
+    }
+
+    /**
+     * Removes the first occurrence of the specified element from this list,
+     * if it is present.
+     *
+     * @param o element to be removed from this list, if present
+     * @return true if this list contained the specified element
+     */
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index < 0) return false;
+        remove(index);
+        return true;
+    }
+
+    /**
+     * Removes from this list all of the elements whose index is between
+     * <code>fromIndex</code>, inclusive, and <code>toIndex</code>, exclusive,
+     * firing a single event.
+     *
+     * @param fromIndex index of first element to be removed
+     * @param toIndex index after last element to be removed
+     */
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        int oldSize = size();
+        super.removeRange(fromIndex, toIndex);
+        if (toIndex > fromIndex) changed(oldSize, fromIndex, oldSize - toIndex);
+    }
+
+    /**
+     * Removes all of the elements of this list that satisfy the given
+     * predicate, in a single pass. A contiguous run of removed elements is
+     * notified as a single removal; scattered ones as the removal of the
+     * list's tail plus a change of the span between the first removed element
+     * and the new end. The list is left untouched if the predicate throws.
+     *
+     * @param filter a predicate which returns true for elements to be removed
+     * @return true if any elements were removed
+     */
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+        Objects.requireNonNull(filter);
+        int oldSize = size();
+        BitSet doomed = new BitSet(oldSize);
+        for (int i = 0; i < oldSize; i++)
+            if (filter.test(get(i))) doomed.set(i);
+
+        int first = doomed.nextSetBit(0);
+        if (first < 0) return false;
+        int last = doomed.previousSetBit(oldSize - 1);
+
+        int write = first;
+        for (int read = doomed.nextClearBit(first); read < oldSize; read = doomed.nextClearBit(read + 1))
+            super.set(write++, get(read));
+        super.removeRange(write, oldSize);
+
+        changed(oldSize, first, oldSize - last - 1);
+        return true;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(c::contains);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(element -> !c.contains(element));
+    }
+
+    /**
+     * Replaces each element of this list with the result of applying the
+     * operator to that element, firing a single event.
+     *
+     * @param operator the operator to apply to each element
+     */
+    @Override
+    public void replaceAll(UnaryOperator<E> operator) {
+        super.replaceAll(operator);
+        if (!isEmpty()) changed(size(), 0, 0);
+    }
+
+    /**
+     * Replaces the contents of this list with those of the given one, firing
+     * only the events of a minimal edit script between the two, so that
+     * unchanged elements keep their selection and need no repaint.
+     *
+     * @param contents the new contents of this list
+     * @see ListDiff
+     */
+    public void replaceAll(List<? extends E> contents) {
+        for (ListDiff.Hunk hunk : ListDiff.diff(this, contents)) {
+            int oldSize = size();
+            super.removeRange(hunk.oldFrom, hunk.oldFrom + hunk.oldCount);
+            super.addAll(hunk.oldFrom, contents.subList(hunk.newFrom, hunk.newFrom + hunk.newCount));
+            changed(oldSize, hunk.oldFrom, size() - hunk.oldFrom - hunk.newCount);
+        }
+    }
+
+    /**
+     * Sorts this list according to the order induced by the specified
+     * comparator, firing a single event.
+     *
+     * @param c the comparator used to compare list elements, or null for
+     * natural ordering
+     */
+    @Override
+    public void sort(Comparator<? super E> c) {
+        super.sort(c);
+        if (!isEmpty()) changed(size(), 0, 0);
     }
 
     @Override
     public void clear() {
-        int index = size();
+        int oldSize = size();
         super.clear();
-        fireIntervalRemoved(this, 0, index);
+        if (oldSize > 0) changed(oldSize, 0, 0);
+    }
+
+    //__________________________________________________________________________
+    // Update transactions
+
+    private int updateDepth;
+    private int batchOldSize;
+    private int batchFrom;
+    private int batchTail;
+
+    /**
+     * Starts a transaction: until the matching {@link #endUpdate()}, changes
+     * are not notified, but merged. Transactions can be nested, only the
+     * outermost one is effective.
+     */
+    public void beginUpdate() {
+        if (updateDepth++ == 0) {
+            batchOldSize = size();
+            batchFrom = Integer.MAX_VALUE;
+            batchTail = Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Ends a transaction. When the outermost transaction ends, all changes
+     * made since its start are notified as at most two events: a change over
+     * the span between the first and last touched elements, plus an addition
+     * or removal for the difference in size.
+     *
+     * @throws IllegalStateException if no transaction is in progress
+     */
+    public void endUpdate() {
+        if (updateDepth == 0) throw new IllegalStateException("No update in progress");
+        if (--updateDepth == 0 && batchFrom != Integer.MAX_VALUE)
+            fireChanges(batchOldSize, size(), batchFrom, batchTail);
+    }
+
+    /**
+     * Records a change that left untouched the first <code>from</code>
+     * elements and the last <code>tail</code> ones, notifying it right away
+     * unless a transaction is in progress.
+     *
+     * @param oldSize the size of the list before the change
+     * @param from the index of the first touched element
+     * @param tail the number of untouched elements at the end of the list
+     */
+    private void changed(int oldSize, int from, int tail) {
+        if (updateDepth > 0) {
+            // Both bounds only ever shrink: an untouched prefix and suffix
+            // stay so across later changes unless these reach into them
+            batchFrom = Math.min(batchFrom, from);
+            batchTail = Math.min(batchTail, tail);
+        }
+        else fireChanges(oldSize, size(), from, tail);
+    }
+
+    // The span between the untouched prefix and suffix was replaced: its
+    // common length changed, the rest was added or removed
+    private void fireChanges(int oldSize, int newSize, int from, int tail) {
+        tail = Math.min(tail, Math.min(oldSize, newSize) - from);
+        int oldSpan = oldSize - from - tail;
+        int newSpan = newSize - from - tail;
+        int common = Math.min(oldSpan, newSpan);
+
+        if (common > 0) fireContentsChanged(this, from, from + common - 1);
+        if (newSpan > oldSpan) fireIntervalAdded(this, from + common, from + newSpan - 1);
+        else if (oldSpan > newSpan) fireIntervalRemoved(this, from + common, from + oldSpan - 1);
     }
-    
-    
 
     protected EventListenerList listenerList = new EventListenerList();
 
@@ -25,11 +25,16 @@
 package project2100.commons.swing;
 
 import java.lang.reflect.*;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 import javax.swing.AbstractListModel;
@@ -40,6 +45,12 @@ import javax.swing.UIManager;
 /**
  * A {@link ListModel} founded over a collection-like {@link List}. Everything
  * parameterized.
+ * <p>
+ * In snapshot mode, the model also keeps a copy-on-write array of its
+ * elements: {@link #snapshot()} hands out an immutable view of it in constant
+ * time, from any thread, and the array is copied only on the first mutation
+ * after a snapshot was taken. Iteration and streams then run over a snapshot,
+ * so background readers never observe the model halfway through a change.
  *
  * @author Project2100
  * @param <L>
@@ -48,6 +59,7 @@ import javax.swing.UIManager;
 public class CollectionListModel<E, L extends List<E>> extends AbstractListModel<E> implements Iterable<E> {
 
     private final L delegate;
+    private volatile SnapshotArray snapshots;
 
     public CollectionListModel(Supplier<L> listSupplier, Class<E> o) {
         delegate = listSupplier.get();
@@ -76,18 +88,69 @@ public class CollectionListModel<E, L extends List<E>> extends AbstractListModel
         return delegate.get(index);
     }
 
+    /**
+     * Returns an iterator over the elements of this model. In snapshot mode it
+     * iterates over a snapshot, and is safe to use from any thread; otherwise
+     * it iterates over the live list, from the EDT only.
+     *
+     * @return an iterator over the elements of this model
+     */
     @Override
     public Iterator<E> iterator() {
-        // XXX Safe?
-        return delegate.iterator();
+        return snapshots != null ? snapshot().iterator() : delegate.iterator();
     }
 
+    /**
+     * Returns a sequential stream over the elements of this model, over a
+     * snapshot if in snapshot mode.
+     *
+     * @return a stream over the elements of this model
+     * @see #iterator()
+     */
     public Stream<E> stream() {
-        return delegate.stream();
+        return snapshots != null ? snapshot().stream() : delegate.stream();
     }
 
+    /**
+     * Returns a parallel stream over the elements of this model, over a
+     * snapshot if in snapshot mode.
+     *
+     * @return a parallel stream over the elements of this model
+     * @see #iterator()
+     */
     public Stream<E> parallelStream() {
-        return delegate.parallelStream();
+        return snapshots != null ? snapshot().parallelStream() : delegate.parallelStream();
+    }
+
+    //__________________________________________________________________________
+    // Snapshots
+
+    /**
+     * Turns snapshot mode on or off. Must be called on the thread mutating
+     * this model.
+     *
+     * @param enabled whether snapshots are to be maintained
+     */
+    public void setSnapshotMode(boolean enabled) {
+        if (enabled == (snapshots != null)) return;
+        snapshots = enabled ? new SnapshotArray(delegate) : null;
+    }
+
+    public boolean isSnapshotMode() {
+        return snapshots != null;
+    }
+
+    /**
+     * Takes an immutable snapshot of this model's contents, in constant time.
+     * Can be called from any thread.
+     *
+     * @return the contents of this model at the time of the call
+     * @throws IllegalStateException if snapshot mode is off
+     */
+    public List<E> snapshot() {
+        SnapshotArray array = snapshots;
+        if (array == null) throw new IllegalStateException("Snapshot mode is off");
+        return array.share();
     }
 
     /**
@@ -102,6 +165,7 @@ public class CollectionListModel<E, L extends List<E>> extends AbstractListModel
     public E set(int index, E element) {
         E old = delegate.get(index);
         delegate.set(index, element);
+        if (snapshots != null) snapshots.set(index, element);
         fireContentsChanged(this, index, index);
         return old;
     }
@@ -116,6 +180,7 @@ public class CollectionListModel<E, L extends List<E>> extends AbstractListModel
      */
     public void add(int index, E element) {
         delegate.add(index, element);
+        if (snapshots != null) snapshots.insert(index, Arrays.asList(element));
         fireIntervalAdded(element, index, index);
     }
 
@@ -128,6 +193,40 @@ public class CollectionListModel<E, L extends List<E>> extends AbstractListModel
         add(delegate.size(), element);
     }
 
+    /**
+     * Replaces the contents of this list model with those of the given list,
+     * firing only the events of a minimal edit script between the two, so
+     * that unchanged elements keep their selection and need no repaint.
+     *
+     * @param contents the new contents of this list model
+     * @see ListDiff
+     */
+    public void replaceAll(List<? extends E> contents) {
+        for (ListDiff.Hunk hunk : ListDiff.diff(delegate, contents)) {
+            int common = Math.min(hunk.oldCount, hunk.newCount);
+            int from = hunk.oldFrom;
+
+            List<? extends E> added = contents.subList(hunk.newFrom + common, hunk.newFrom + hunk.newCount);
+            for (int i = 0; i < common; i++)
+                delegate.set(from + i, contents.get(hunk.newFrom + i));
+            if (hunk.oldCount > common)
+                delegate.subList(from + common, from + hunk.oldCount).clear();
+            else if (hunk.newCount > common)
+                delegate.addAll(from + common, added);
+
+            if (snapshots != null) {
+                for (int i = 0; i < common; i++)
+                    snapshots.set(from + i, contents.get(hunk.newFrom + i));
+                if (hunk.oldCount > common) snapshots.remove(from + common, from + hunk.oldCount);
+                else if (hunk.newCount > common) snapshots.insert(from + common, added);
+            }
+
+            if (common > 0) fireContentsChanged(this, from, from + common - 1);
+            if (hunk.oldCount > common) fireIntervalRemoved(this, from + common, from + hunk.oldCount - 1);
+            else if (hunk.newCount > common) fireIntervalAdded(this, from + common, from + hunk.newCount - 1);
+        }
+    }
+
     /**
      * Tells the number of elements in this list model.
      *
@@ -152,7 +251,88 @@ public class CollectionListModel<E, L extends List<E>> extends AbstractListModel
      * @see List#clear()
      */
     public void clear() {
+        int size = delegate.size();
         delegate.clear();
+        if (snapshots != null) snapshots.remove(0, size);
+        if (size > 0) fireIntervalRemoved(this, 0, size - 1);
+    }
+
+    /**
+     * The copy-on-write mirror of the model's elements. Mutations come from a
+     * single thread, and copy the array first if a snapshot shares it; the
+     * lock only orders them with snapshots taken on other threads.
+     */
+    private static final class SnapshotArray {
+
+        private Object[] elements;
+        private int size;
+        private boolean shared;
+
+        private SnapshotArray(Collection<?> contents) {
+            elements = contents.toArray();
+            size = elements.length;
+        }
+
+        synchronized <E> List<E> share() {
+            shared = true;
+            return new Snapshot<>(elements, size);
+        }
+
+        synchronized void set(int index, Object element) {
+            unshare(size);
+            elements[index] = element;
+        }
+
+        synchronized void insert(int index, Collection<?> added) {
+            Object[] source = added.toArray();
+            unshare(size + source.length);
+            System.arraycopy(elements, index, elements, index + source.length, size - index);
+            System.arraycopy(source, 0, elements, index, source.length);
+            size += source.length;
+        }
+
+        synchronized void remove(int from, int to) {
+            unshare(size);
+            System.arraycopy(elements, to, elements, from, size - to);
+            Arrays.fill(elements, size - (to - from), size, null);
+            size -= to - from;
+        }
+
+        private void unshare(int capacity) {
+            if (shared || elements.length < capacity) {
+                int length = elements.length < capacity ? Math.max(capacity, elements.length + (elements.length >> 1)) : elements.length;
+                elements = Arrays.copyOf(elements, length);
+                shared = false;
+            }
+        }
+    }
+
+    private static final class Snapshot<E> extends AbstractList<E> implements RandomAccess {
+
+        private final Object[] elements;
+        private final int size;
+
+        private Snapshot(Object[] elements, int size) {
+            this.elements = elements;
+            this.size = size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            return (E) elements[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Spliterator<E> spliterator() {
+            return Spliterators.spliterator(elements, 0, size, Spliterator.ORDERED | Spliterator.IMMUTABLE);
+        }
     }
 
     // Debugging purposes, for now... generics can be very bitchy
@@ -0,0 +1,122 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.swing;
+
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * An {@link ArrayListModel} fed by any number of producer threads.
+ * <p>
+ * Producers {@link #publish} elements into a lock-free queue and never touch
+ * Swing. The queue is drained on the Event Dispatch Thread at most once per
+ * frame: all elements published meanwhile are appended in one batch, notified
+ * as a single event.
+ *
+ * @implnote Apart from the publishing methods, the model is still a plain
+ * {@link ArrayListModel}, to be read and mutated on the EDT only.
+ *
+ * @author Project2100
+ * @param <E>
+ */
+public class ConcurrentListModel<E> extends ArrayListModel<E> {
+
+    /**
+     * Default delay between two drains, in milliseconds, i.e. a frame at
+     * about 60 Hz.
+     */
+    public static final int DEFAULT_FRAME = 16;
+
+    private final Queue<E> published = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Timer drainTimer;
+
+    public ConcurrentListModel() {
+        this(DEFAULT_FRAME);
+    }
+
+    /**
+     * Creates an empty model.
+     *
+     * @param frameMillis the minimum delay between two drains
+     */
+    public ConcurrentListModel(int frameMillis) {
+        drainTimer = new Timer(frameMillis, event -> flush());
+        drainTimer.setRepeats(false);
+    }
+
+    /**
+     * Queues an element to be appended to this model. Safe to call from any
+     * thread, never blocks.
+     *
+     * @param element the element to append
+     * @throws NullPointerException if the element is null
+     */
+    public void publish(E element) {
+        published.add(element);
+        schedule();
+    }
+
+    /**
+     * Queues elements to be appended to this model, in iteration order. Safe
+     * to call from any thread, never blocks.
+     *
+     * @param elements the elements to append
+     * @throws NullPointerException if any element is null
+     */
+    public void publishAll(Collection<? extends E> elements) {
+        if (elements.isEmpty()) return;
+        published.addAll(elements);
+        schedule();
+    }
+
+    /**
+     * Appends all published elements right away. To be called on the EDT.
+     */
+    public void flush() {
+        // Cleared first, so that elements published during the drain get a
+        // drain of their own
+        scheduled.set(false);
+        if (published.isEmpty()) return;
+
+        beginUpdate();
+        try {
+            for (E element = published.poll(); element != null; element = published.poll())
+                append(element);
+        }
+        finally {
+            endUpdate();
+        }
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true))
+            SwingUtilities.invokeLater(drainTimer::restart);
+    }
+}
@@ -25,23 +25,70 @@
 package project2100.commons.swing;
 
 import java.awt.Component;
+import java.awt.Rectangle;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.Icon;
 import javax.swing.JLabel;
 import javax.swing.JList;
 import javax.swing.ListCellRenderer;
+import javax.swing.ListModel;
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
 import javax.swing.filechooser.FileSystemView;
 
 /**
+ * A {@link ListCellRenderer} showing files by name and system icon.
+ * <p>
+ * System icons are cached, by extension for ordinary files and by path for
+ * directories and files carrying their own icon, evicting the least recently
+ * used ones. A missing icon is looked up on a background thread, as the file
+ * system may be slow to answer, the look and feel's generic icon standing in
+ * until it arrives; then only the cells waiting for it are repainted.
  *
  * @author Project2100
  */
 public class FileListRenderer extends JLabel implements ListCellRenderer<File> {
 
+    /**
+     * How many icons are kept in memory, shared by all renderers.
+     */
+    public static final int ICON_CACHE_CAPACITY = 512;
+
+    // Extensions whose files usually have an icon of their own
+    private static final Set<String> OWN_ICON_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "exe", "lnk", "ico", "url", "scr", "cpl", "msi", "app", "desktop"));
+
+    // EDT-confined
+    private static final Map<Object, Icon> ICONS = new LinkedHashMap<Object, Icon>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Icon> eldest) {
+            return size() > ICON_CACHE_CAPACITY;
+        }
+    };
+    private static final Map<Object, List<Runnable>> PENDING = new HashMap<>();
+
+    private static final ExecutorService RESOLVER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "file-icon-resolver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     @Override
     public Component getListCellRendererComponent(JList<? extends File> list, File file, int index, boolean isSelected, boolean cellHasFocus) {
         
         setText(file.getName());
-        setIcon(FileSystemView.getFileSystemView().getSystemIcon(file));
+        setIcon(iconOf(list, index, file));
         setEnabled(list.isEnabled());
         setFont(list.getFont());
         setOpaque(true);
@@ -56,4 +103,71 @@ public class FileListRenderer extends JLabel implements ListCellRenderer<File> {
         }
         return this;
     }
+
+    /**
+     * Empties the icon cache shared by all renderers, e.g. after a change of
+     * look and feel.
+     */
+    public static void clearIconCache() {
+        ICONS.clear();
+    }
+
+    //__________________________________________________________________________
+    // Icon resolution
+
+    private static Icon iconOf(JList<? extends File> list, int index, File file) {
+        Object key = cacheKey(file);
+        Icon icon = ICONS.get(key);
+        // Without a generic icon in the look and feel, null is cached as well
+        if (icon != null || ICONS.containsKey(key)) return icon;
+
+        List<Runnable> waiting = PENDING.get(key);
+        if (waiting == null) {
+            PENDING.put(key, waiting = new ArrayList<>());
+            RESOLVER.execute(() -> {
+                Icon resolved;
+                try {
+                    resolved = FileSystemView.getFileSystemView().getSystemIcon(file);
+                }
+                catch (RuntimeException ex) {
+                    resolved = null;
+                }
+                Icon result = resolved != null ? resolved : placeholder();
+                SwingUtilities.invokeLater(() -> {
+                    ICONS.put(key, result);
+                    PENDING.remove(key).forEach(Runnable::run);
+                });
+            });
+        }
+        waiting.add(() -> repaintCell(list, index, file));
+        return placeholder();
+    }
+
+    private static Object cacheKey(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot <= 0 || dot == name.length() - 1) return file;
+
+        // Telling dotted directories apart would hit the file system here
+        String extension = name.substring(dot + 1).toLowerCase(Locale.ROOT);
+        if (OWN_ICON_EXTENSIONS.contains(extension)) return file;
+        return extension;
+    }
+
+    private static Icon placeholder() {
+        return UIManager.getIcon("FileView.fileIcon");
+    }
+
+    /**
+     * Repaints the cell showing the given file, or the whole list if the file
+     * has moved since it was painted.
+     */
+    static void repaintCell(JList<? extends File> list, int index, File file) {
+        ListModel<? extends File> model = list.getModel();
+        if (index < model.getSize() && file.equals(model.getElementAt(index))) {
+            Rectangle bounds = list.getCellBounds(index, index);
+            if (bounds != null) list.repaint(bounds);
+        }
+        else list.repaint();
+    }
 }
@@ -0,0 +1,314 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.swing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+import javax.swing.AbstractListModel;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JList;
+import javax.swing.ListCellRenderer;
+
+/**
+ * A list model of <code>int</code> values, stored unboxed in a growable
+ * buffer, either on the heap or off-heap. Values are only boxed when read
+ * through {@link #getElementAt(int)}, i.e. for the cells being painted.
+ * <p>
+ * Bulk operations fire a single event, as in {@link ArrayListModel}; there
+ * are no update transactions, though.
+ *
+ * @author Project2100
+ * @see LongListModel
+ */
+public class IntListModel extends AbstractListModel<Integer> {
+
+    private final boolean direct;
+    private IntBuffer values;
+    private int size;
+
+    /**
+     * Creates an empty model on the heap.
+     */
+    public IntListModel() {
+        this(16, false);
+    }
+
+    private IntListModel(int capacity, boolean direct) {
+        this.direct = direct;
+        this.values = allocate(Math.max(1, capacity));
+    }
+
+    /**
+     * Creates an empty model on the heap.
+     *
+     * @param capacity the initial capacity
+     * @return the model
+     */
+    public static IntListModel onHeap(int capacity) {
+        return new IntListModel(capacity, false);
+    }
+
+    /**
+     * Creates an empty model whose values live outside of the Java heap, in a
+     * direct buffer, so that they add nothing to garbage collection work.
+     *
+     * @param capacity the initial capacity
+     * @return the model
+     */
+    public static IntListModel offHeap(int capacity) {
+        return new IntListModel(capacity, true);
+    }
+
+    private IntBuffer allocate(int capacity) {
+        return direct
+                ? ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer()
+                : IntBuffer.allocate(capacity);
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= values.capacity()) return;
+        if (required < 0) throw new OutOfMemoryError("Required capacity overflow");
+
+        // Direct buffers are sized in bytes
+        int limit = direct ? Integer.MAX_VALUE / Integer.BYTES : Integer.MAX_VALUE - 8;
+        if (required > limit) throw new OutOfMemoryError("Required capacity exceeds " + limit);
+        int capacity = (int) Math.min(limit, Math.max(required, values.capacity() * 3L / 2 + 1));
+        IntBuffer grown = allocate(capacity);
+        IntBuffer old = values.duplicate();
+        old.position(0).limit(size);
+        grown.put(old);
+        values = grown;
+    }
+
+    private void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Integer getElementAt(int index) {
+        return getInt(index);
+    }
+
+    /**
+     * Gets the value at the specified position, without boxing it.
+     *
+     * @param index index of the value to return
+     * @return the value at the specified position
+     * @throws IndexOutOfBoundsException
+     */
+    public int getInt(int index) {
+        checkIndex(index, size);
+        return values.get(index);
+    }
+
+    /**
+     * Replaces the value at the specified position.
+     *
+     * @param index index of the value to replace
+     * @param value value to be stored at the specified position
+     * @return the value previously stored at the specified position
+     * @throws IndexOutOfBoundsException
+     */
+    public int set(int index, int value) {
+        checkIndex(index, size);
+        int old = values.get(index);
+        values.put(index, value);
+        fireContentsChanged(this, index, index);
+        return old;
+    }
+
+    /**
+     * Appends the specified value at the end of this list.
+     *
+     * @param value value to be appended
+     */
+    public void append(int value) {
+        ensureCapacity(size + 1);
+        values.put(size++, value);
+        fireIntervalAdded(this, size - 1, size - 1);
+    }
+
+    /**
+     * Inserts the specified value at the specified position.
+     *
+     * @param index index at which the value is to be inserted
+     * @param value value to be inserted
+     * @throws IndexOutOfBoundsException
+     */
+    public void add(int index, int value) {
+        checkIndex(index, size + 1);
+        ensureCapacity(size + 1);
+        shift(index, 1);
+        values.put(index, value);
+        size++;
+        fireIntervalAdded(this, index, index);
+    }
+
+    /**
+     * Appends all of the given values, firing a single event.
+     *
+     * @param source the values to append
+     */
+    public void appendAll(int[] source) {
+        appendAll(source, 0, source.length);
+    }
+
+    /**
+     * Appends a range of the given values, firing a single event.
+     *
+     * @param source the values to append
+     * @param offset the index of the first value to append
+     * @param length the number of values to append
+     */
+    public void appendAll(int[] source, int offset, int length) {
+        if (length == 0) return;
+        ensureCapacity(size + length);
+        IntBuffer target = values.duplicate();
+        target.position(size);
+        target.put(source, offset, length);
+        size += length;
+        fireIntervalAdded(this, size - length, size - 1);
+    }
+
+    /**
+     * Removes the value at the specified position.
+     *
+     * @param index the index of the value to be removed
+     * @return the removed value
+     * @throws IndexOutOfBoundsException
+     */
+    public int removeAt(int index) {
+        checkIndex(index, size);
+        int old = values.get(index);
+        removeRange(index, index + 1);
+        return old;
+    }
+
+    /**
+     * Removes the values between <code>fromIndex</code>, inclusive, and
+     * <code>toIndex</code>, exclusive, firing a single event.
+     *
+     * @param fromIndex index of the first value to be removed
+     * @param toIndex index after the last value to be removed
+     * @throws IndexOutOfBoundsException
+     */
+    public void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size || fromIndex > toIndex)
+            throw new IndexOutOfBoundsException("Range: [" + fromIndex + ", " + toIndex + "), Size: " + size);
+        if (fromIndex == toIndex) return;
+
+        shift(toIndex, fromIndex - toIndex);
+        size -= toIndex - fromIndex;
+        fireIntervalRemoved(this, fromIndex, toIndex - 1);
+    }
+
+    public void clear() {
+        if (size == 0) return;
+        int oldSize = size;
+        size = 0;
+        fireIntervalRemoved(this, 0, oldSize - 1);
+    }
+
+    /**
+     * Sorts the values in ascending order, firing a single event.
+     */
+    public void sort() {
+        if (size < 2) return;
+        if (values.hasArray()) Arrays.sort(values.array(), values.arrayOffset(), values.arrayOffset() + size);
+        else {
+            int[] sorted = toArray();
+            Arrays.sort(sorted);
+            IntBuffer target = values.duplicate();
+            target.position(0);
+            target.put(sorted);
+        }
+        fireContentsChanged(this, 0, size - 1);
+    }
+
+    /**
+     * Copies the values of this list.
+     *
+     * @return a new array holding the values, in order
+     */
+    public int[] toArray() {
+        IntBuffer range = values.duplicate();
+        range.position(0).limit(size);
+        return toArrayRange(range);
+    }
+
+    // Moves the tail starting at index by the given distance
+    private void shift(int index, int distance) {
+        if (index == size) return;
+        if (values.hasArray()) {
+            int base = values.arrayOffset();
+            System.arraycopy(values.array(), base + index, values.array(), base + index + distance, size - index);
+        }
+        else {
+            IntBuffer tail = values.duplicate();
+            tail.position(index).limit(size);
+            IntBuffer target = values.duplicate();
+            target.position(index + distance);
+            // Overlapping bulk puts are not specified, go through a copy
+            target.put(IntBuffer.wrap(toArrayRange(tail)));
+        }
+    }
+
+    private static int[] toArrayRange(IntBuffer range) {
+        int[] copy = new int[range.remaining()];
+        range.get(copy);
+        return copy;
+    }
+
+    /**
+     * Creates a renderer for views of this model, formatting each value only
+     * when its cell is painted; e.g. with
+     * {@link project2100.commons.time.TimeISO8601#prettifyInt(int)} for
+     * seconds of the day.
+     *
+     * @param formatter converts values to display strings
+     * @return the renderer
+     */
+    public ListCellRenderer<Integer> renderer(IntFunction<String> formatter) {
+        DefaultListCellRenderer delegate = new DefaultListCellRenderer();
+        return (list, value, index, isSelected, cellHasFocus) -> delegate.getListCellRendererComponent(list,
+                value != null ? formatter.apply(value) : null, index, isSelected, cellHasFocus);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.swing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Computes the differences between two lists as a minimal edit script, using
+ * Myers' O(ND) algorithm after stripping their common prefix and suffix.
+ * <p>
+ * The script is given as hunks, each replacing a span of the old list with a
+ * span of the new one, in descending order: applied in sequence, later hunks
+ * never see positions shifted by earlier ones.
+ *
+ * @implnote The search keeps one row of furthest reaching paths per edit,
+ * i.e. quadratic memory in the number of edits; past {@link #MAX_EDITS} the
+ * remaining span is replaced as a single hunk.
+ *
+ * @author Project2100
+ */
+final class ListDiff {
+
+    static final int MAX_EDITS = 2048;
+
+    /**
+     * A replacement of <code>oldCount</code> elements at
+     * <code>oldFrom</code> with <code>newCount</code> elements taken at
+     * <code>newFrom</code> from the new list.
+     */
+    static final class Hunk {
+
+        final int oldFrom, oldCount, newFrom, newCount;
+
+        private Hunk(int oldFrom, int oldCount, int newFrom, int newCount) {
+            this.oldFrom = oldFrom;
+            this.oldCount = oldCount;
+            this.newFrom = newFrom;
+            this.newCount = newCount;
+        }
+    }
+
+    private ListDiff() {
+    }
+
+    /**
+     * Compares two lists, by element equality.
+     *
+     * @param oldList the list as it is
+     * @param newList the list as it should be
+     * @return the hunks transforming the old list into the new one, last first
+     */
+    static List<Hunk> diff(List<?> oldList, List<?> newList) {
+        Object[] a = oldList.toArray();
+        Object[] b = newList.toArray();
+
+        int prefix = 0;
+        int limit = Math.min(a.length, b.length);
+        while (prefix < limit && Objects.equals(a[prefix], b[prefix]))
+            prefix++;
+        int suffix = 0;
+        limit -= prefix;
+        while (suffix < limit && Objects.equals(a[a.length - 1 - suffix], b[b.length - 1 - suffix]))
+            suffix++;
+
+        int n = a.length - prefix - suffix;
+        int m = b.length - prefix - suffix;
+        List<Hunk> hunks = new ArrayList<>();
+        if (n == 0 && m == 0) return hunks;
+        if (n == 0 || m == 0) {
+            hunks.add(new Hunk(prefix, n, prefix, m));
+            return hunks;
+        }
+
+        // Furthest reaching x on each diagonal k = x - y, offset by max
+        int max = n + m;
+        int[] v = new int[2 * max + 2];
+        List<int[]> trace = new ArrayList<>();
+        int edits = -1;
+
+        search:
+        for (int d = 0; d <= Math.min(max, MAX_EDITS); d++) {
+            trace.add(Arrays.copyOfRange(v, max - d, max + d + 2));
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && v[max + k - 1] < v[max + k + 1])
+                        ? v[max + k + 1]
+                        : v[max + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && Objects.equals(a[prefix + x], b[prefix + y])) {
+                    x++;
+                    y++;
+                }
+                v[max + k] = x;
+                if (x >= n && y >= m) {
+                    edits = d;
+                    break search;
+                }
+            }
+        }
+
+        if (edits < 0) {
+            hunks.add(new Hunk(prefix, n, prefix, m));
+            return hunks;
+        }
+
+        // Walk back from the end, closing a hunk at every diagonal run
+        int x = n, y = m;
+        boolean open = false;
+        int endX = 0, endY = 0;
+        for (int d = edits; d > 0; d--) {
+            int[] row = trace.get(d);
+            int k = x - y;
+            // Row d holds diagonals -d..d+1 of the previous round
+            boolean down = k == -d || (k != d && row[k - 1 + d] < row[k + 1 + d]);
+            int prevK = down ? k + 1 : k - 1;
+            int prevX = row[prevK + d];
+            int prevY = prevX - prevK;
+            int midX = down ? prevX : prevX + 1;
+            int midY = down ? prevY + 1 : prevY;
+
+            if (x != midX && open) {
+                hunks.add(new Hunk(prefix + x, endX - x, prefix + y, endY - y));
+                open = false;
+            }
+            if (!open) {
+                open = true;
+                endX = midX;
+                endY = midY;
+            }
+            x = prevX;
+            y = prevY;
+        }
+        if (open) hunks.add(new Hunk(prefix + x, endX - x, prefix + y, endY - y));
+        return hunks;
+    }
+}
@@ -0,0 +1,403 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.swing;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import javax.swing.JList;
+import javax.swing.ListModel;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import javax.swing.text.Position;
+
+/**
+ * A text index over the contents of a {@link ListModel}, kept up to date from
+ * the model's events, for type-ahead and search in large lists.
+ * <p>
+ * Keys are compared ignoring case. Prefix lookups run over a sorted map of the
+ * keys, taking time proportional to the number of matches; substring lookups,
+ * when enabled, scan the shortest posting list among the pattern's trigrams,
+ * verifying each candidate. A {@link JList} can use the
+ * index for its keyboard navigation by overriding
+ * {@link JList#getNextMatch(String, int, Position.Bias)}:
+ * <pre>{@code
+ * JList<E> list = new JList<E>(model) {
+ *     public int getNextMatch(String prefix, int startIndex, Position.Bias bias) {
+ *         return index.nextMatch(prefix, startIndex, bias);
+ *     }
+ * };
+ * }</pre>
+ * Indexing an element costs time proportional to its key length, but
+ * inserting or removing in the middle of the model also renumbers the
+ * following entries, as the model itself does.
+ *
+ * @author Project2100
+ * @param <E>
+ */
+public class ListSearchIndex<E> {
+
+    private final ListModel<E> model;
+    private final Function<? super E, String> keyFunction;
+    private final boolean substrings;
+    private final ListDataListener modelListener = new ModelListener();
+
+    // Entries have stable ids; ids is in model order, positions maps back
+    private int[] ids = new int[16];
+    private int size;
+    private int[] positions = new int[16];
+    private String[] keys = new String[16];
+    private int[] freeIds = new int[16];
+    private int freeCount, nextId;
+
+    private final TreeMap<String, IdSet> prefixes = new TreeMap<>();
+    private final HashMap<Long, IdSet> trigrams = new HashMap<>();
+
+    /**
+     * Creates a prefix-only index over the {@code toString} of the model's
+     * elements.
+     *
+     * @param model the model to index
+     */
+    public ListSearchIndex(ListModel<E> model) {
+        this(model, String::valueOf, false);
+    }
+
+    /**
+     * Creates an index over the model's elements, registering it as a
+     * listener of the model.
+     *
+     * @param model the model to index
+     * @param keyFunction gives the text of an element
+     * @param substrings whether to also index trigrams, for
+     * {@link #substringMatches(String)}
+     */
+    public ListSearchIndex(ListModel<E> model, Function<? super E, String> keyFunction, boolean substrings) {
+        this.model = model;
+        this.keyFunction = Objects.requireNonNull(keyFunction);
+        this.substrings = substrings;
+        rebuild();
+        model.addListDataListener(modelListener);
+    }
+
+    /**
+     * Detaches this index from its model.
+     */
+    public void dispose() {
+        model.removeListDataListener(modelListener);
+    }
+
+    /**
+     * Reads the whole model again, e.g. after it changed without notifying
+     * its listeners.
+     */
+    public void rebuild() {
+        prefixes.clear();
+        trigrams.clear();
+        size = freeCount = nextId = 0;
+        insert(0, model.getSize());
+    }
+
+    //__________________________________________________________________________
+    // Lookups
+
+    /**
+     * Finds the elements whose key starts with the given prefix, ignoring case.
+     *
+     * @param prefix the prefix to look for
+     * @return the ascending model indices of the matching elements
+     */
+    public int[] prefixMatches(String prefix) {
+        String folded = fold(prefix);
+        IntBuffer result = new IntBuffer();
+        for (Map.Entry<String, IdSet> entry : prefixes.tailMap(folded, true).entrySet()) {
+            if (!entry.getKey().startsWith(folded)) break;
+            entry.getValue().forEach(id -> result.add(positions[id]));
+        }
+        return result.sorted();
+    }
+
+    /**
+     * Finds the elements whose key contains the given text, ignoring case.
+     * Patterns shorter than three characters are looked up with a scan of
+     * all keys.
+     *
+     * @param text the text to look for
+     * @return the ascending model indices of the matching elements
+     * @throws IllegalStateException if this index was created without
+     * substring support
+     */
+    public int[] substringMatches(String text) {
+        if (!substrings) throw new IllegalStateException("Substring index not enabled");
+        String folded = fold(text);
+        IntBuffer result = new IntBuffer();
+
+        if (folded.length() < 3) {
+            for (int i = 0; i < size; i++)
+                if (keys[ids[i]].contains(folded)) result.add(i);
+            return result.sorted();
+        }
+
+        IdSet rarest = null;
+        for (int i = 0; i + 3 <= folded.length(); i++) {
+            IdSet postings = trigrams.get(trigram(folded, i));
+            if (postings == null) return new int[0];
+            if (rarest == null || postings.size < rarest.size) rarest = postings;
+        }
+        rarest.forEach(id -> {
+            if (keys[id].contains(folded)) result.add(positions[id]);
+        });
+        return result.sorted();
+    }
+
+    /**
+     * Finds the next element whose key starts with the given prefix, with the
+     * same semantics as {@link JList#getNextMatch(String, int, Position.Bias)}.
+     *
+     * @param prefix the prefix to look for
+     * @param startIndex the index to start searching from
+     * @param bias the search direction
+     * @return the index of the matching element, or -1
+     */
+    public int nextMatch(String prefix, int startIndex, Position.Bias bias) {
+        if (prefix == null) throw new IllegalArgumentException();
+        if (startIndex < 0 || startIndex >= size) throw new IllegalArgumentException();
+
+        int[] matches = prefixMatches(prefix);
+        if (matches.length == 0) return -1;
+
+        int point = Arrays.binarySearch(matches, startIndex);
+        if (point >= 0) return matches[point];
+        point = -point - 1;
+        if (bias == Position.Bias.Forward)
+            return matches[point < matches.length ? point : 0];
+        else
+            return matches[point > 0 ? point - 1 : matches.length - 1];
+    }
+
+    //__________________________________________________________________________
+    // Maintenance
+
+    private void insert(int from, int count) {
+        ensureSize(size + count);
+        System.arraycopy(ids, from, ids, from + count, size - from);
+        size += count;
+        for (int i = from + count; i < size; i++)
+            positions[ids[i]] = i;
+
+        for (int i = from; i < from + count; i++) {
+            int id = freeCount > 0 ? freeIds[--freeCount] : nextId++;
+            ensureIds(id + 1);
+            ids[i] = id;
+            positions[id] = i;
+            keys[id] = fold(keyFunction.apply(model.getElementAt(i)));
+            index(id);
+        }
+    }
+
+    private void remove(int from, int count) {
+        if (freeIds.length < freeCount + count)
+            freeIds = Arrays.copyOf(freeIds, Math.max(freeCount + count, freeIds.length * 2));
+        for (int i = from; i < from + count; i++) {
+            int id = ids[i];
+            unindex(id);
+            keys[id] = null;
+            freeIds[freeCount++] = id;
+        }
+        System.arraycopy(ids, from + count, ids, from, size - from - count);
+        size -= count;
+        for (int i = from; i < size; i++)
+            positions[ids[i]] = i;
+    }
+
+    private void update(int from, int to) {
+        for (int i = from; i <= to; i++) {
+            int id = ids[i];
+            String key = fold(keyFunction.apply(model.getElementAt(i)));
+            if (key.equals(keys[id])) continue;
+            unindex(id);
+            keys[id] = key;
+            index(id);
+        }
+    }
+
+    private void index(int id) {
+        String key = keys[id];
+        prefixes.computeIfAbsent(key, k -> new IdSet()).add(id);
+        if (substrings)
+            for (int i = 0; i + 3 <= key.length(); i++)
+                trigrams.computeIfAbsent(trigram(key, i), k -> new IdSet()).add(id);
+    }
+
+    private void unindex(int id) {
+        String key = keys[id];
+        IdSet set = prefixes.get(key);
+        if (set.remove(id) && set.size == 0) prefixes.remove(key);
+        if (substrings)
+            for (int i = 0; i + 3 <= key.length(); i++) {
+                Long gram = trigram(key, i);
+                set = trigrams.get(gram);
+                // A key repeating a trigram removes it only once
+                if (set != null && set.remove(id) && set.size == 0) trigrams.remove(gram);
+            }
+    }
+
+    private void ensureSize(int capacity) {
+        if (ids.length < capacity)
+            ids = Arrays.copyOf(ids, Math.max(capacity, ids.length * 2));
+    }
+
+    private void ensureIds(int capacity) {
+        if (positions.length < capacity) {
+            int length = Math.max(capacity, positions.length * 2);
+            positions = Arrays.copyOf(positions, length);
+            keys = Arrays.copyOf(keys, length);
+        }
+    }
+
+    private static String fold(String text) {
+        return text == null ? "null" : text.toLowerCase(Locale.ROOT);
+    }
+
+    private static Long trigram(String key, int at) {
+        return ((long) key.charAt(at) << 32) | ((long) key.charAt(at + 1) << 16) | key.charAt(at + 2);
+    }
+
+    private class ModelListener implements ListDataListener {
+
+        @Override
+        public void intervalAdded(ListDataEvent event) {
+            int from = Math.min(event.getIndex0(), event.getIndex1());
+            int to = Math.max(event.getIndex0(), event.getIndex1());
+            insert(from, to - from + 1);
+        }
+
+        @Override
+        public void intervalRemoved(ListDataEvent event) {
+            int from = Math.min(event.getIndex0(), event.getIndex1());
+            int to = Math.max(event.getIndex0(), event.getIndex1());
+            remove(from, to - from + 1);
+        }
+
+        @Override
+        public void contentsChanged(ListDataEvent event) {
+            int from = Math.min(event.getIndex0(), event.getIndex1());
+            int to = Math.max(event.getIndex0(), event.getIndex1());
+            // Bulk changes may notify the common span before the resize
+            if (from < 0) rebuild();
+            else update(from, Math.min(to, Math.min(size, model.getSize()) - 1));
+        }
+    }
+
+    //__________________________________________________________________________
+    // Primitive collections
+
+    /**
+     * An open-addressing set of non-negative ids, with linear probing and
+     * backward-shift deletion.
+     */
+    private static final class IdSet {
+
+        private static final int EMPTY = -1;
+
+        private int[] table = {EMPTY, EMPTY};
+        private int size;
+
+        boolean add(int id) {
+            if ((size + 1) * 4 > table.length * 3) grow();
+            int mask = table.length - 1;
+            int slot = hash(id) & mask;
+            while (table[slot] != EMPTY) {
+                if (table[slot] == id) return false;
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id;
+            size++;
+            return true;
+        }
+
+        boolean remove(int id) {
+            int mask = table.length - 1;
+            int slot = hash(id) & mask;
+            while (table[slot] != id) {
+                if (table[slot] == EMPTY) return false;
+                slot = (slot + 1) & mask;
+            }
+            // Pull back any following entry whose probe passes over the hole
+            int hole = slot;
+            for (int next = (hole + 1) & mask; table[next] != EMPTY; next = (next + 1) & mask) {
+                int home = hash(table[next]) & mask;
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    table[hole] = table[next];
+                    hole = next;
+                }
+            }
+            table[hole] = EMPTY;
+            size--;
+            return true;
+        }
+
+        void forEach(IntConsumer action) {
+            for (int id : table)
+                if (id != EMPTY) action.accept(id);
+        }
+
+        private void grow() {
+            int[] old = table;
+            table = new int[old.length * 2];
+            Arrays.fill(table, EMPTY);
+            size = 0;
+            for (int id : old)
+                if (id != EMPTY) add(id);
+        }
+
+        private static int hash(int id) {
+            int h = id * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    private static final class IntBuffer {
+
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int[] sorted() {
+            int[] result = Arrays.copyOf(values, size);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+}
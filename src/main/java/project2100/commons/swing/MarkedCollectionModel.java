@@ -26,9 +26,12 @@ package project2100.commons.swing;
 
 import java.awt.Color;
 import java.awt.Component;
+import java.awt.Rectangle;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.lang.reflect.*;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.function.Supplier;
@@ -39,6 +42,11 @@ import javax.swing.UIManager;
 /**
  * An extended Collection model that implements marking capabilities as seen in
  * the markDecorator. Mark index handling is centralized.
+ * <p>
+ * Besides the single mark, any number of range marks can be created, each one
+ * a set of indices with its own color; later marks paint over earlier ones,
+ * and the single mark over all of them. Mark changes repaint only the cells
+ * involved in every connected view.
  *
  * @author Project2100
  * @param <E>
@@ -49,6 +57,8 @@ public class MarkedCollectionModel<E, L extends List<E>> extends CollectionListM
     private int mark;
     private Color markColor = Color.orange;
     private final HashSet<JList<E>> views = new HashSet<>();
+    private final ArrayList<BitSet> rangeMarks = new ArrayList<>();
+    private final ArrayList<Color> rangeColors = new ArrayList<>();
 
     public MarkedCollectionModel(L collection) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
         super(collection);
@@ -64,6 +74,8 @@ public class MarkedCollectionModel<E, L extends List<E>> extends CollectionListM
     public void clear() {
         super.clear();
         mark = 0;
+        rangeMarks.forEach(BitSet::clear);
+        views.forEach(JList::repaint);
     }
 
     /**
@@ -85,7 +97,8 @@ public class MarkedCollectionModel<E, L extends List<E>> extends CollectionListM
     public int incrementMark(int offset) {
         int old = mark;
         mark += offset;
-        views.forEach(JList::repaint);
+        repaintCell(old);
+        repaintCell(mark);
         return mark;
     }
 
@@ -98,7 +111,8 @@ public class MarkedCollectionModel<E, L extends List<E>> extends CollectionListM
     public void setMark(int index) {
         int old = mark;
         mark = index;
-        views.forEach(JList::repaint);
+        repaintCell(old);
+        repaintCell(mark);
     }
 
     /**
@@ -117,6 +131,105 @@ public class MarkedCollectionModel<E, L extends List<E>> extends CollectionListM
      */
     public void setMarkColor(Color markColor) {
         this.markColor = markColor;
+        repaintCell(mark);
+    }
+
+    //__________________________________________________________________________
+    // Range marks
+
+    /**
+     * Creates a new, empty range mark.
+     *
+     * @param color the background color of the marked cells
+     * @return the identifier of the new mark
+     */
+    public int createRangeMark(Color color) {
+        rangeMarks.add(new BitSet());
+        rangeColors.add(color);
+        return rangeMarks.size() - 1;
+    }
+
+    /**
+     * Marks or unmarks the given range of indices. Triggers a repaint of the
+     * affected cells only.
+     *
+     * @param markId the identifier of the range mark
+     * @param from the first index of the range, inclusive
+     * @param to the last index of the range, inclusive
+     * @param marked whether the range is to be marked
+     */
+    public void setMarked(int markId, int from, int to, boolean marked) {
+        rangeMarks.get(markId).set(from, to + 1, marked);
+        repaintCells(from, to);
+    }
+
+    /**
+     * Tells whether the given index belongs to a range mark.
+     *
+     * @param markId the identifier of the range mark
+     * @param index the index to check
+     * @return true if the index is marked
+     */
+    public boolean isMarked(int markId, int index) {
+        return index >= 0 && rangeMarks.get(markId).get(index);
+    }
+
+    /**
+     * Unmarks every index of a range mark.
+     *
+     * @param markId the identifier of the range mark
+     */
+    public void clearRangeMark(int markId) {
+        BitSet set = rangeMarks.get(markId);
+        if (set.isEmpty()) return;
+        int from = set.nextSetBit(0), to = set.length() - 1;
+        set.clear();
+        repaintCells(from, to);
+    }
+
+    /**
+     * Gets a copy of the indices belonging to a range mark.
+     *
+     * @param markId the identifier of the range mark
+     * @return the marked indices
+     */
+    public BitSet getMarked(int markId) {
+        return (BitSet) rangeMarks.get(markId).clone();
+    }
+
+    public Color getRangeMarkColor(int markId) {
+        return rangeColors.get(markId);
+    }
+
+    public void setRangeMarkColor(int markId, Color color) {
+        rangeColors.set(markId, color);
+        BitSet set = rangeMarks.get(markId);
+        if (!set.isEmpty()) repaintCells(set.nextSetBit(0), set.length() - 1);
+    }
+
+    // The background of the given index, or null if none applies
+    private Color markColorOf(int index) {
+        if (index == mark) return markColor;
+        for (int i = rangeMarks.size() - 1; i >= 0; i--)
+            if (rangeMarks.get(i).get(index)) return rangeColors.get(i);
+        return null;
+    }
+
+    private void repaintCell(int index) {
+        if (index >= 0) repaintCells(index, index);
+    }
+
+    // Cell bounds span the whole range only when cells are laid out in a column
+    private void repaintCells(int from, int to) {
+        for (JList<E> view : views) {
+            int last = getSize() - 1;
+            if (from > last) continue;
+            Rectangle bounds = from == to || view.getLayoutOrientation() == JList.VERTICAL
+                    ? view.getCellBounds(Math.max(from, 0), Math.min(to, last))
+                    : null;
+            if (bounds != null) view.repaint(bounds);
+            else view.repaint();
+        }
     }
 
     /**
@@ -155,8 +268,9 @@ public class MarkedCollectionModel<E, L extends List<E>> extends CollectionListM
         public Component getListCellRendererComponent(JList<? extends E> list, E value, int index, boolean isSelected, boolean cellHasFocus) {
             Component c = delegate.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
 
-            if (!isSelected && index == mark)
-                c.setBackground(markColor);
+            Color color = isSelected ? null : markColorOf(index);
+            if (color != null)
+                c.setBackground(color);
             return c;
         }
 
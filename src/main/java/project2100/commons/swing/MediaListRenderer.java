@@ -0,0 +1,132 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.swing;
+
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import javax.swing.Icon;
+import javax.swing.JList;
+import javax.swing.SwingUtilities;
+import project2100.commons.ffmpeg.MediaScanner;
+import project2100.commons.ffmpeg.ThumbnailExtractor;
+
+/**
+ * A {@link FileListRenderer} showing video thumbnails in place of system
+ * icons.
+ * <p>
+ * Thumbnails are taken from the extractor's memory cache only; a missing one
+ * is requested in the background, the system icon standing in until it
+ * arrives, and then the rows of the list are measured again to fit it, unless
+ * the list has a fixed cell height. Painting never waits for a thumbnail.
+ *
+ * @author Project2100
+ */
+public class MediaListRenderer extends FileListRenderer {
+
+    private final ThumbnailExtractor extractor;
+    private final Predicate<Path> videoFilter = MediaScanner.videoFilter();
+    private final Set<Path> requested = ConcurrentHashMap.newKeySet();
+    private final Set<Path> failed = ConcurrentHashMap.newKeySet();
+    private final Set<JList<?>> relayouts = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    public MediaListRenderer(ThumbnailExtractor extractor) {
+        this.extractor = extractor;
+    }
+
+    @Override
+    public Component getListCellRendererComponent(JList<? extends File> list, File file, int index, boolean isSelected, boolean cellHasFocus) {
+        super.getListCellRendererComponent(list, file, index, isSelected, cellHasFocus);
+
+        Path path = file.toPath();
+        if (!videoFilter.test(path) || failed.contains(path)) return this;
+
+        BufferedImage thumbnail = extractor.getCached(path);
+        if (thumbnail != null) setIcon(new ThumbnailIcon(thumbnail));
+        else if (requested.add(path))
+            extractor.getThumbnail(path).whenComplete((image, ex) -> SwingUtilities.invokeLater(() -> {
+                requested.remove(path);
+                if (ex != null) {
+                    failed.add(path);
+                    repaintCell(list, index, file);
+                }
+                else relayout(list);
+            }));
+        return this;
+    }
+
+    // The list caches the row heights measured with the system icon, so a
+    // thumbnail would be clipped to them; changing the fixed cell height is
+    // the only public way to have them measured again. Thumbnails landing
+    // together share a single pass
+    private void relayout(JList<? extends File> list) {
+        if (list.getFixedCellHeight() != -1 || !relayouts.add(list)) return;
+        SwingUtilities.invokeLater(() -> {
+            relayouts.remove(list);
+            list.setFixedCellHeight(0);
+            list.setFixedCellHeight(-1);
+        });
+    }
+
+    /**
+     * Forgets the videos whose thumbnails could not be extracted, so that
+     * they are tried again on their next paint.
+     */
+    public void clearFailures() {
+        failed.clear();
+    }
+
+    // Paints the thumbnail as is, avoiding ImageIcon's media tracking
+    private static class ThumbnailIcon implements Icon {
+
+        private final BufferedImage image;
+
+        private ThumbnailIcon(BufferedImage image) {
+            this.image = image;
+        }
+
+        @Override
+        public void paintIcon(Component c, Graphics g, int x, int y) {
+            g.drawImage(image, x, y, null);
+        }
+
+        @Override
+        public int getIconWidth() {
+            return image.getWidth();
+        }
+
+        @Override
+        public int getIconHeight() {
+            return image.getHeight();
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.swing;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javax.swing.AbstractListModel;
+import javax.swing.JList;
+import javax.swing.SwingUtilities;
+
+/**
+ * A virtual {@link javax.swing.ListModel} that only knows its size, and loads
+ * its elements on demand, in fixed-size pages, from a {@link PageSource}.
+ * <p>
+ * Pages are loaded in the background and kept in an LRU cache; until a page
+ * arrives, its elements read as the placeholder, and its arrival is notified
+ * as a change of its interval. Each access also prefetches the neighbouring
+ * pages, so that scrolling seldom shows placeholders. Heap use is thus bound
+ * by the cache capacity rather than by the size of the data set.
+ * <p>
+ * Pending loads are served newest first, and at most as many as the cache
+ * holds are kept waiting: during a fast scroll, the pages scrolled past are
+ * dropped in favour of the ones now visible, and requested again if they
+ * come back into view.
+ *
+ * @implnote The model must be accessed on the Event Dispatch Thread. Views
+ * should have a fixed cell size or a prototype cell value, otherwise JList
+ * reads every element to compute its preferred size.
+ *
+ * @author Project2100
+ * @param <E>
+ */
+public class PagedListModel<E> extends AbstractListModel<E> {
+
+    /**
+     * The provider of the elements of a {@link PagedListModel}. Its methods
+     * are invoked on background threads.
+     *
+     * @param <E> the type of the elements
+     */
+    public interface PageSource<E> {
+
+        /**
+         * Tells the total number of elements.
+         *
+         * @return the number of elements
+         */
+        int size();
+
+        /**
+         * Loads a range of elements.
+         *
+         * @param offset the index of the first element
+         * @param count the number of elements, possibly reaching past the
+         * end of the source
+         * @return the elements, in order; the list may be shorter than
+         * requested only at the end of the source
+         * @throws Exception if loading fails, in which case the page keeps
+         * showing placeholders until the next {@link #refresh()}, and the
+         * exception goes to the model's error handler
+         */
+        List<E> load(int offset, int count) throws Exception;
+    }
+
+    private static final AtomicInteger poolCount = new AtomicInteger();
+
+    private final PageSource<E> source;
+    private final int pageSize;
+    private final int prefetch;
+    private final E placeholder;
+    private final ExecutorService loader;
+
+    private int size;
+    private final LinkedHashMap<Integer, List<E>> pages;
+    private final Set<Integer> loading = new HashSet<>();
+    private final Set<Integer> failed = new HashSet<>();
+    // Loads issued before a refresh must not land in the new cache
+    private int generation;
+    private Consumer<? super Exception> errorHandler = ex -> {
+    };
+
+    /**
+     * Creates a model with 256-element pages, caching 32 pages and
+     * prefetching one page on each side of the accessed one.
+     *
+     * @param source the element provider
+     * @param size the initial size, usually <code>source.size()</code>
+     * @param placeholder the value of elements not loaded yet, possibly null
+     */
+    public PagedListModel(PageSource<E> source, int size, E placeholder) {
+        this(source, size, placeholder, 256, 32, 1);
+    }
+
+    /**
+     * Creates a model.
+     *
+     * @param source the element provider
+     * @param size the initial size, usually <code>source.size()</code>
+     * @param placeholder the value of elements not loaded yet, possibly null
+     * @param pageSize the number of elements per page
+     * @param cachedPages the maximum number of pages held in memory
+     * @param prefetch the number of pages to prefetch on each side of an
+     * accessed page
+     */
+    public PagedListModel(PageSource<E> source, int size, E placeholder, int pageSize, int cachedPages, int prefetch) {
+        if (pageSize < 1 || cachedPages < 1 || prefetch < 0)
+            throw new IllegalArgumentException("Invalid paging: " + pageSize + "/" + cachedPages + "/" + prefetch);
+        // The pages of the current viewport must fit in the cache with room
+        // for the prefetched ones, or they would evict each other
+        if (cachedPages < 2 * prefetch + 2)
+            throw new IllegalArgumentException("Cache too small for prefetching " + prefetch + " pages");
+
+        this.source = source;
+        this.size = size;
+        this.placeholder = placeholder;
+        this.pageSize = pageSize;
+        this.prefetch = prefetch;
+        this.pages = new LinkedHashMap<Integer, List<E>>(cachedPages * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<E>> eldest) {
+                return size() > cachedPages;
+            }
+        };
+
+        int pool = poolCount.incrementAndGet();
+        AtomicInteger threads = new AtomicInteger();
+        loader = new ThreadPoolExecutor(2, 2, 0, TimeUnit.MILLISECONDS, new LoadQueue(cachedPages), task -> {
+            Thread thread = new Thread(task, "page-loader-" + pool + "-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the element at the given index, or the placeholder if its page is
+     * not loaded yet; in that case the page is requested.
+     *
+     * @param index the index of the element
+     * @return the element, or the placeholder
+     */
+    @Override
+    public E getElementAt(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+        int page = index / pageSize;
+        List<E> elements = pages.get(page);
+        for (int i = 1; i <= prefetch; i++) {
+            request(page + i);
+            request(page - i);
+        }
+
+        if (elements == null) {
+            request(page);
+            return placeholder;
+        }
+        int offset = index - page * pageSize;
+        return offset < elements.size() ? elements.get(offset) : placeholder;
+    }
+
+    /**
+     * Loads the pages spanning the given range, e.g. the visible rows of a
+     * view about to be shown.
+     *
+     * @param first the first index
+     * @param last the last index, inclusive
+     */
+    public void prefetch(int first, int last) {
+        for (int page = Math.max(0, first) / pageSize; page <= Math.min(last, size - 1) / pageSize; page++)
+            request(page);
+    }
+
+    /**
+     * Loads the pages currently visible in the given view.
+     *
+     * @param view a list showing this model
+     */
+    public void prefetchVisible(JList<E> view) {
+        int first = view.getFirstVisibleIndex();
+        if (first >= 0) prefetch(first, view.getLastVisibleIndex());
+    }
+
+    /**
+     * Sets the receiver of the exceptions thrown by the source, called on the
+     * Event Dispatch Thread. By default they are ignored.
+     *
+     * @param errorHandler the error handler
+     */
+    public void setErrorHandler(Consumer<? super Exception> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Drops every cached page and reads the size of the source again, in the
+     * background; listeners are notified once the new size is known. If the
+     * source fails to tell its size, the old one is kept and the exception
+     * goes to the error handler.
+     */
+    public void refresh() {
+        int refreshed = ++generation;
+        pages.clear();
+        loading.clear();
+        failed.clear();
+        loader.execute(() -> {
+            int newSize;
+            try {
+                newSize = source.size();
+            }
+            catch (RuntimeException ex) {
+                SwingUtilities.invokeLater(() -> {
+                    if (refreshed == generation) errorHandler.accept(ex);
+                });
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                if (refreshed != generation) return;
+                int oldSize = size;
+                size = newSize;
+                if (newSize < oldSize) fireIntervalRemoved(this, newSize, oldSize - 1);
+                if (newSize > oldSize) fireIntervalAdded(this, oldSize, newSize - 1);
+                if (Math.min(oldSize, newSize) > 0) fireContentsChanged(this, 0, Math.min(oldSize, newSize) - 1);
+            });
+        });
+    }
+
+    private void request(int page) {
+        if (page < 0 || page * (long) pageSize >= size) return;
+        if (pages.containsKey(page) || failed.contains(page) || !loading.add(page)) return;
+
+        int offset = page * pageSize;
+        loader.execute(new PageLoad(generation, page, offset, Math.min(pageSize, size - offset)));
+    }
+
+    private void arrived(int requested, int page, List<E> elements, Exception error) {
+        if (requested != generation) return;
+        loading.remove(page);
+        if (error != null) {
+            failed.add(page);
+            errorHandler.accept(error);
+            return;
+        }
+
+        pages.put(page, elements);
+        int first = page * pageSize;
+        int last = Math.min(size, first + pageSize) - 1;
+        if (first <= last) fireContentsChanged(this, first, last);
+    }
+
+    private class PageLoad implements Runnable {
+
+        private final int requested;
+        private final int page;
+        private final int offset;
+        private final int count;
+
+        private PageLoad(int requested, int page, int offset, int count) {
+            this.requested = requested;
+            this.page = page;
+            this.offset = offset;
+            this.count = count;
+        }
+
+        @Override
+        public void run() {
+            List<E> elements = null;
+            Exception error = null;
+            try {
+                elements = source.load(offset, count);
+            }
+            catch (Exception ex) {
+                error = ex;
+            }
+            List<E> loaded = elements;
+            Exception failure = error;
+            SwingUtilities.invokeLater(() -> arrived(requested, page, loaded, failure));
+        }
+
+        // Called on the EDT, while a newer request is being queued
+        private void dropped() {
+            if (requested == generation) loading.remove(page);
+        }
+    }
+
+    /**
+     * A LIFO work queue holding a bounded number of page loads, dropping the
+     * oldest ones rather than refusing new ones. Other tasks are never
+     * dropped.
+     */
+    private class LoadQueue extends LinkedBlockingDeque<Runnable> {
+
+        private final int limit;
+
+        private LoadQueue(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean offer(Runnable task) {
+            offerFirst(task);
+            int loads = 0;
+            for (Iterator<Runnable> tasks = iterator(); tasks.hasNext();) {
+                Runnable queued = tasks.next();
+                if (queued instanceof PagedListModel.PageLoad && ++loads > limit) {
+                    tasks.remove();
+                    ((PagedListModel<?>.PageLoad) queued).dropped();
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -26,6 +26,7 @@ package project2100.commons.swing;
 
 import java.awt.Color;
 import java.awt.Component;
+import java.awt.Rectangle;
 import javax.swing.JList;
 import javax.swing.ListCellRenderer;
 
@@ -69,8 +70,10 @@ public class SingleMarkDecorator<E> implements ListCellRenderer<E> {
      * @return
      */
     public int incrementMark(int offset) {
+        int old = mark;
         mark += offset;
-        view.repaint();
+        repaintCell(old);
+        repaintCell(mark);
         return mark;
     }
 
@@ -81,8 +84,16 @@ public class SingleMarkDecorator<E> implements ListCellRenderer<E> {
      * @param index the mark's new index
      */
     public void setMark(int index) {
+        int old = mark;
         mark = index;
-        view.repaint();
+        repaintCell(old);
+        repaintCell(mark);
+    }
+
+    private void repaintCell(int index) {
+        if (index < 0 || index >= view.getModel().getSize()) return;
+        Rectangle bounds = view.getCellBounds(index, index);
+        if (bounds != null) view.repaint(bounds);
     }
 
     @Override
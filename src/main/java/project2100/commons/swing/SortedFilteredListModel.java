@@ -0,0 +1,324 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.swing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import javax.swing.AbstractListModel;
+import javax.swing.ListModel;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+/**
+ * A sorted and filtered view over another {@link ListModel}, such as a
+ * {@link CollectionListModel}, kept up to date incrementally from the source's
+ * events.
+ * <p>
+ * Each inserted, removed or changed source element is located by binary
+ * search and notified as a single-row event, so the view is never re-sorted
+ * on updates; the backing arrays still shift on every insertion and removal,
+ * as an {@link ArrayList} does. Changing the filter re-filters the already sorted elements in
+ * parallel, on the fork-join common pool, and notifies the difference as
+ * coalesced runs of additions and removals; only a new comparator causes a
+ * (parallel) sort.
+ *
+ * @implnote The view keeps its own copy of the source's element references,
+ * in source order, to identify removed elements. The relative order of
+ * elements comparing as equal is unspecified. A changed element is looked up
+ * by identity if its ordering key changed in place, at the cost of a linear
+ * scan. Large source events, spanning more than an eighth of the source,
+ * trigger a full rebuild instead.
+ *
+ * @author Project2100
+ * @param <E>
+ */
+public class SortedFilteredListModel<E> extends AbstractListModel<E> {
+
+    private final ListModel<E> source;
+    private final ListDataListener sourceListener = new SourceListener();
+    private Comparator<? super E> comparator;
+    private Predicate<? super E> filter;
+
+    // Source elements in source order, all of them sorted, and the filtered
+    // subsequence of the sorted ones
+    private final ArrayList<E> mirror = new ArrayList<>();
+    private ArrayList<E> sorted = new ArrayList<>();
+    private ArrayList<E> view = new ArrayList<>();
+    // How many times each instance appears in the view
+    private final IdentityHashMap<E, Integer> visible = new IdentityHashMap<>();
+
+    /**
+     * Creates a view, registering it as a listener of the source.
+     *
+     * @param source the source model
+     * @param comparator the ordering of the view
+     * @param filter selects the elements shown by the view
+     */
+    public SortedFilteredListModel(ListModel<E> source, Comparator<? super E> comparator, Predicate<? super E> filter) {
+        this.source = source;
+        this.comparator = Objects.requireNonNull(comparator);
+        this.filter = Objects.requireNonNull(filter);
+        rebuild();
+        source.addListDataListener(sourceListener);
+    }
+
+    @Override
+    public int getSize() {
+        return view.size();
+    }
+
+    @Override
+    public E getElementAt(int index) {
+        return view.get(index);
+    }
+
+    /**
+     * Detaches this view from its source.
+     */
+    public void dispose() {
+        source.removeListDataListener(sourceListener);
+    }
+
+    public Predicate<? super E> getFilter() {
+        return filter;
+    }
+
+    /**
+     * Changes the filter of this view. The sorted elements are re-filtered in
+     * parallel, and only the rows entering or leaving the view are notified.
+     *
+     * @param filter the new filter
+     */
+    public void setFilter(Predicate<? super E> filter) {
+        this.filter = Objects.requireNonNull(filter);
+        ArrayList<E> old = view;
+        view = sorted.parallelStream().filter(filter).collect(Collectors.toCollection(ArrayList::new));
+        countVisible();
+        fireDifference(old);
+    }
+
+    public Comparator<? super E> getComparator() {
+        return comparator;
+    }
+
+    /**
+     * Changes the ordering of this view, sorting it again in parallel.
+     *
+     * @param comparator the new ordering
+     */
+    public void setComparator(Comparator<? super E> comparator) {
+        this.comparator = Objects.requireNonNull(comparator);
+        int oldSize = view.size();
+        resort();
+        fireResized(oldSize);
+    }
+
+    /**
+     * Reads the whole source again, e.g. after it changed without notifying
+     * its listeners.
+     */
+    public void refresh() {
+        int oldSize = view.size();
+        rebuild();
+        fireResized(oldSize);
+    }
+
+    //__________________________________________________________________________
+    // Maintenance
+
+    private void rebuild() {
+        mirror.clear();
+        int size = source.getSize();
+        mirror.ensureCapacity(size);
+        for (int i = 0; i < size; i++)
+            mirror.add(source.getElementAt(i));
+        resort();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void resort() {
+        E[] elements = (E[]) mirror.toArray();
+        Arrays.parallelSort(elements, comparator);
+        sorted = new ArrayList<>(Arrays.asList(elements));
+        view = sorted.parallelStream().filter(filter).collect(Collectors.toCollection(ArrayList::new));
+        countVisible();
+    }
+
+    private void countVisible() {
+        visible.clear();
+        for (E element : view)
+            visible.merge(element, 1, Integer::sum);
+    }
+
+    private void insert(E element) {
+        sorted.add(upperBound(sorted, element), element);
+        if (filter.test(element)) {
+            int index = upperBound(view, element);
+            view.add(index, element);
+            visible.merge(element, 1, Integer::sum);
+            fireIntervalAdded(this, index, index);
+        }
+    }
+
+    private void remove(E element) {
+        int index = find(sorted, element);
+        if (index >= 0) sorted.remove(index);
+
+        if (!visible.containsKey(element)) return;
+        index = find(view, element);
+        if (index >= 0) {
+            view.remove(index);
+            visible.computeIfPresent(element, (e, count) -> count > 1 ? count - 1 : null);
+            fireIntervalRemoved(this, index, index);
+        }
+    }
+
+    // Insertion point after all elements comparing equal
+    private int upperBound(List<E> list, E element) {
+        int low = 0, high = list.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (comparator.compare(list.get(middle), element) <= 0) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    // Position of this very instance among the elements comparing equal, or
+    // anywhere if its key changed since it was placed
+    private int find(List<E> list, E element) {
+        int low = 0, high = list.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (comparator.compare(list.get(middle), element) < 0) low = middle + 1;
+            else high = middle;
+        }
+        for (int i = low; i < list.size() && comparator.compare(list.get(i), element) == 0; i++)
+            if (list.get(i) == element) return i;
+        for (int i = 0; i < list.size(); i++)
+            if (list.get(i) == element) return i;
+        return -1;
+    }
+
+    // Both views are subsequences of the same sorted list, so a single merge
+    // walk over it tells which rows left and which entered
+    private void fireDifference(List<E> old) {
+        int i = 0, j = 0, row = 0;
+        int run = 0;
+        boolean adding = false;
+
+        for (E element : sorted) {
+            boolean inOld = i < old.size() && old.get(i) == element;
+            boolean inNew = j < view.size() && view.get(j) == element;
+            if (inOld) i++;
+            if (inNew) j++;
+
+            if (inOld && inNew) {
+                run = fireRun(row, run, adding);
+                row++;
+            }
+            else if (inOld || inNew) {
+                if (run > 0 && adding != inNew) run = fireRun(row, run, adding);
+                adding = inNew;
+                run++;
+                // Removed rows disappear in place, added ones push the rest
+                if (inNew) row++;
+            }
+        }
+        fireRun(row, run, adding);
+    }
+
+    // Fires a run of additions ending before row, or of removals starting at it
+    private int fireRun(int row, int run, boolean adding) {
+        if (run > 0) {
+            if (adding) fireIntervalAdded(this, row - run, row - 1);
+            else fireIntervalRemoved(this, row, row + run - 1);
+        }
+        return 0;
+    }
+
+    private void fireResized(int oldSize) {
+        int newSize = view.size();
+        if (newSize < oldSize) fireIntervalRemoved(this, newSize, oldSize - 1);
+        if (newSize > oldSize) fireIntervalAdded(this, oldSize, newSize - 1);
+        if (Math.min(oldSize, newSize) > 0) fireContentsChanged(this, 0, Math.min(oldSize, newSize) - 1);
+    }
+
+    private boolean isLarge(ListDataEvent event) {
+        int span = Math.abs(event.getIndex1() - event.getIndex0()) + 1;
+        return span > 64 && span > mirror.size() / 8;
+    }
+
+    private class SourceListener implements ListDataListener {
+
+        @Override
+        public void intervalAdded(ListDataEvent event) {
+            if (isLarge(event)) {
+                refresh();
+                return;
+            }
+            int from = Math.min(event.getIndex0(), event.getIndex1());
+            int to = Math.max(event.getIndex0(), event.getIndex1());
+            for (int i = from; i <= to; i++) {
+                E element = source.getElementAt(i);
+                mirror.add(i, element);
+                insert(element);
+            }
+        }
+
+        @Override
+        public void intervalRemoved(ListDataEvent event) {
+            if (isLarge(event)) {
+                refresh();
+                return;
+            }
+            int from = Math.min(event.getIndex0(), event.getIndex1());
+            int to = Math.max(event.getIndex0(), event.getIndex1());
+            for (int i = to; i >= from; i--)
+                remove(mirror.remove(i));
+        }
+
+        @Override
+        public void contentsChanged(ListDataEvent event) {
+            if (isLarge(event) || event.getIndex0() < 0) {
+                refresh();
+                return;
+            }
+            int from = Math.min(event.getIndex0(), event.getIndex1());
+            int to = Math.max(event.getIndex0(), event.getIndex1());
+            for (int i = from; i <= to; i++) {
+                E element = source.getElementAt(i);
+                remove(mirror.set(i, element));
+                insert(element);
+            }
+        }
+    }
+}
@@ -0,0 +1,724 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.time;
+
+import java.time.format.DateTimeParseException;
+
+/**
+ * A hand-written ISO 8601 codec working on primitive encodings: dates as epoch
+ * days, times of day as nanoseconds since midnight, zone offsets as seconds,
+ * instants as epoch milliseconds or nanoseconds, durations as nanoseconds.
+ * <p>
+ * Parsing accepts calendar ({@code 2018-06-30}), ordinal
+ * ({@code 2018-181}) and week ({@code 2018-W26-6}) dates, in extended or basic
+ * format, with four-digit years or signed longer ones; times of day down to
+ * the nanosecond ({@code 12:30:15.5}, {@code 123015,5}, {@code 12:30}); zone
+ * offsets ({@code Z}, {@code +02}, {@code -05:30}); and durations as
+ * {@code PnDTnHnMnS}, with signs and fractional seconds as accepted by
+ * {@link java.time.Duration#parse(CharSequence)}. Malformed text throws a
+ * {@link DateTimeParseException} pointing at the offending character.
+ * <p>
+ * Formatting appends to a {@link StringBuilder} in the same forms as the
+ * {@code toString} methods of {@code java.time}, so that results round-trip
+ * with both.
+ *
+ * @author Project2100
+ */
+public final class ISO8601 {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long NANOS_PER_MINUTE = 60 * NANOS_PER_SECOND;
+    private static final long NANOS_PER_HOUR = 60 * NANOS_PER_MINUTE;
+    private static final long NANOS_PER_DAY = 24 * NANOS_PER_HOUR;
+    private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+    private static final int MAX_OFFSET = 18 * 60 * 60;
+
+    // Days between 0000-03-01 and 1970-01-01
+    private static final long DAYS_0000_TO_1970 = 719_468L;
+
+    private ISO8601() {
+    }
+
+    //__________________________________________________________________________
+    // Parsing
+
+    /**
+     * Parses a calendar, ordinal or week date.
+     *
+     * @param text the date
+     * @return the number of days since 1970-01-01
+     * @throws DateTimeParseException if the text is not a valid date
+     */
+    public static long parseDate(CharSequence text) {
+        return parseDate(text, 0, text.length());
+    }
+
+    /**
+     * Parses a calendar, ordinal or week date spanning the given range of the
+     * text.
+     *
+     * @param text the text holding the date
+     * @param from the index of the date's first character
+     * @param to the index following the date's last character
+     * @return the number of days since 1970-01-01
+     * @throws DateTimeParseException if the range is not a valid date
+     */
+    public static long parseDate(CharSequence text, int from, int to) {
+        int at = from;
+        boolean signed = at < to && (text.charAt(at) == '+' || text.charAt(at) == '-');
+        if (signed) at++;
+        int yearEnd = at;
+        if (signed) {
+            // Expanded years come in extended format only
+            while (yearEnd < to && isDigit(text.charAt(yearEnd)))
+                yearEnd++;
+            if (yearEnd - at < 4 || yearEnd - at > 9) throw error("Invalid year", text, at);
+        }
+        else yearEnd = at + 4;
+        long year = digits(text, at, yearEnd, to);
+        if (signed && text.charAt(from) == '-') year = -year;
+
+        at = yearEnd;
+        boolean extended = at < to && text.charAt(at) == '-';
+        if (extended) at++;
+        else if (signed) throw error("Expected '-'", text, at);
+
+        if (at < to && (text.charAt(at) == 'W' || text.charAt(at) == 'w')) {
+            int week = (int) digits(text, at + 1, at + 3, to);
+            at += 3;
+            if (extended) expect(text, at++, to, '-');
+            int day = (int) digits(text, at, at + 1, to);
+            end(text, at + 1, to);
+            if (week < 1 || week > weeksInYear(year)) throw error("Invalid week", text, at - 3);
+            if (day < 1 || day > 7) throw error("Invalid day of week", text, at);
+            return weekDateToEpochDay(year, week, day);
+        }
+
+        if (to - at == 3) {
+            int dayOfYear = (int) digits(text, at, at + 3, to);
+            if (dayOfYear < 1 || dayOfYear > (isLeap(year) ? 366 : 365)) throw error("Invalid day of year", text, at);
+            return toEpochDay(year, 1, 1) + dayOfYear - 1;
+        }
+
+        int month = (int) digits(text, at, at + 2, to);
+        at += 2;
+        if (extended) expect(text, at++, to, '-');
+        int day = (int) digits(text, at, at + 2, to);
+        end(text, at + 2, to);
+        if (month < 1 || month > 12) throw error("Invalid month", text, at - (extended ? 3 : 2));
+        if (day < 1 || day > lengthOfMonth(year, month)) throw error("Invalid day of month", text, at);
+        return toEpochDay(year, month, day);
+    }
+
+    /**
+     * Parses a time of day, of minute, second or fractional second precision.
+     *
+     * @param text the time
+     * @return the number of nanoseconds since midnight
+     * @throws DateTimeParseException if the text is not a valid time
+     */
+    public static long parseTime(CharSequence text) {
+        return parseTime(text, 0, text.length());
+    }
+
+    /**
+     * Parses a time of day spanning the given range of the text.
+     *
+     * @param text the text holding the time
+     * @param from the index of the time's first character
+     * @param to the index following the time's last character
+     * @return the number of nanoseconds since midnight
+     * @throws DateTimeParseException if the range is not a valid time
+     */
+    public static long parseTime(CharSequence text, int from, int to) {
+        int hour = (int) digits(text, from, from + 2, to);
+        if (hour > 23) throw error("Invalid hour", text, from);
+        int at = from + 2;
+        if (at == to) return hour * NANOS_PER_HOUR;
+
+        boolean extended = text.charAt(at) == ':';
+        if (extended) at++;
+        int minute = (int) digits(text, at, at + 2, to);
+        if (minute > 59) throw error("Invalid minute", text, at);
+        at += 2;
+        long nanos = hour * NANOS_PER_HOUR + minute * NANOS_PER_MINUTE;
+        if (at == to) return nanos;
+
+        if (extended) expect(text, at++, to, ':');
+        int second = (int) digits(text, at, at + 2, to);
+        if (second > 59) throw error("Invalid second", text, at);
+        at += 2;
+        nanos += second * NANOS_PER_SECOND;
+        if (at == to) return nanos;
+
+        char separator = text.charAt(at);
+        if (separator != '.' && separator != ',') throw error("Unexpected character", text, at);
+        at++;
+        if (to - at < 1 || to - at > 9) throw error("Invalid fraction", text, at);
+        return nanos + fraction(text, at, to);
+    }
+
+    /**
+     * Parses a zone offset, either {@code Z} or a signed hour, minute and
+     * second triple of which the last two may be omitted.
+     *
+     * @param text the offset
+     * @return the offset from UTC in seconds
+     * @throws DateTimeParseException if the text is not a valid offset
+     */
+    public static int parseOffset(CharSequence text) {
+        return parseOffset(text, 0, text.length());
+    }
+
+    /**
+     * Parses a zone offset spanning the given range of the text.
+     *
+     * @param text the text holding the offset
+     * @param from the index of the offset's first character
+     * @param to the index following the offset's last character
+     * @return the offset from UTC in seconds
+     * @throws DateTimeParseException if the range is not a valid offset
+     */
+    public static int parseOffset(CharSequence text, int from, int to) {
+        if (from >= to) throw error("Missing offset", text, from);
+        char sign = text.charAt(from);
+        if (sign == 'Z' || sign == 'z') {
+            end(text, from + 1, to);
+            return 0;
+        }
+        if (sign != '+' && sign != '-') throw error("Expected offset sign", text, from);
+
+        int at = from + 1;
+        int seconds = (int) digits(text, at, at + 2, to) * 3600;
+        at += 2;
+        if (at < to) {
+            boolean extended = text.charAt(at) == ':';
+            if (extended) at++;
+            int minutes = (int) digits(text, at, at + 2, to);
+            if (minutes > 59) throw error("Invalid offset minutes", text, at);
+            seconds += minutes * 60;
+            at += 2;
+            if (at < to) {
+                if (extended) expect(text, at++, to, ':');
+                int secs = (int) digits(text, at, at + 2, to);
+                if (secs > 59) throw error("Invalid offset seconds", text, at);
+                seconds += secs;
+                end(text, at + 2, to);
+            }
+        }
+        if (seconds > MAX_OFFSET) throw error("Offset out of range", text, from);
+        return sign == '-' ? -seconds : seconds;
+    }
+
+    /**
+     * Parses a date and time with a zone offset, such as
+     * {@code 2018-06-30T12:30:15.5+02:00}, into epoch milliseconds. Digits
+     * beyond the millisecond are truncated.
+     *
+     * @param text the date and time
+     * @return the number of milliseconds since 1970-01-01T00:00Z
+     * @throws DateTimeParseException if the text is not a valid date and time,
+     * or its instant does not fit
+     */
+    public static long parseEpochMillis(CharSequence text) {
+        int t = indexOfT(text);
+        int offsetStart = offsetStart(text, t);
+        long nanoOfDay = parseTime(text, t + 1, offsetStart);
+        long epochSecond = epochSecond(text, parseDate(text, 0, t), nanoOfDay, parseOffset(text, offsetStart, text.length()));
+        try {
+            return Math.addExact(Math.multiplyExact(epochSecond, 1000L), nanoOfDay % NANOS_PER_SECOND / 1_000_000);
+        }
+        catch (ArithmeticException ex) {
+            throw error("Instant out of range", text, 0);
+        }
+    }
+
+    /**
+     * Parses a date and time with a zone offset into epoch nanoseconds, which
+     * cover years 1677 to 2262.
+     *
+     * @param text the date and time
+     * @return the number of nanoseconds since 1970-01-01T00:00Z
+     * @throws DateTimeParseException if the text is not a valid date and time,
+     * or its instant does not fit
+     * @see #parseEpochMillis(CharSequence)
+     */
+    public static long parseEpochNanos(CharSequence text) {
+        int t = indexOfT(text);
+        int offsetStart = offsetStart(text, t);
+        long nanoOfDay = parseTime(text, t + 1, offsetStart);
+        long epochSecond = epochSecond(text, parseDate(text, 0, t), nanoOfDay, parseOffset(text, offsetStart, text.length()));
+        try {
+            return Math.addExact(Math.multiplyExact(epochSecond, NANOS_PER_SECOND), nanoOfDay % NANOS_PER_SECOND);
+        }
+        catch (ArithmeticException ex) {
+            throw error("Instant out of range", text, 0);
+        }
+    }
+
+    /**
+     * Parses a duration in {@code PnDTnHnMnS} format, as accepted by
+     * {@link java.time.Duration#parse(CharSequence)}: every component is
+     * optional but at least one, each may be signed, as may the whole
+     * duration, and seconds may have up to nine fractional digits.
+     *
+     * @param text the duration
+     * @return the duration in nanoseconds
+     * @throws DateTimeParseException if the text is not a valid duration, or
+     * it does not fit in a long
+     */
+    public static long parseDuration(CharSequence text) {
+        int to = text.length();
+        int at = 0;
+        boolean negative = false;
+        if (at < to && (text.charAt(at) == '+' || text.charAt(at) == '-')) negative = text.charAt(at++) == '-';
+        if (at >= to || (text.charAt(at) != 'P' && text.charAt(at) != 'p')) throw error("Expected 'P'", text, at);
+        at++;
+
+        long total = 0;
+        boolean timePart = false, any = false, anyTime = false;
+        // Units must come in order: D, then H, M, S
+        int lastUnit = -1;
+        try {
+            while (at < to) {
+                char c = text.charAt(at);
+                if (c == 'T' || c == 't') {
+                    if (timePart) throw error("Duplicate 'T'", text, at);
+                    timePart = true;
+                    at++;
+                    continue;
+                }
+
+                int start = at;
+                boolean minus = c == '-';
+                if (c == '+' || c == '-') at++;
+                int digitsStart = at;
+                while (at < to && isDigit(text.charAt(at)))
+                    at++;
+                if (at == digitsStart) throw error("Expected digits", text, at);
+                long value = digitsExact(text, digitsStart, at);
+
+                long fraction = 0;
+                if (at < to && (text.charAt(at) == '.' || text.charAt(at) == ',')) {
+                    int fractionStart = ++at;
+                    while (at < to && isDigit(text.charAt(at)))
+                        at++;
+                    if (at - fractionStart > 9) throw error("Invalid fraction", text, fractionStart);
+                    fraction = at > fractionStart ? fraction(text, fractionStart, at) : 0;
+                    if (at >= to || (text.charAt(at) != 'S' && text.charAt(at) != 's'))
+                        throw error("Fraction allowed in seconds only", text, start);
+                }
+                if (at >= to) throw error("Missing unit", text, at);
+
+                int unit = unitOf(text.charAt(at));
+                if (unit < 0 || (unit == 0) == timePart || unit <= lastUnit) throw error("Unexpected unit", text, at);
+                lastUnit = unit;
+                at++;
+
+                long nanos = Math.addExact(Math.multiplyExact(value, unitNanos(unit)), fraction);
+                total = Math.addExact(total, minus ? -nanos : nanos);
+                any = true;
+                anyTime |= timePart;
+            }
+            if (!any || (timePart && !anyTime)) throw error("Missing components", text, to);
+            return negative ? Math.negateExact(total) : total;
+        }
+        catch (ArithmeticException ex) {
+            throw error("Duration out of range", text, 0);
+        }
+    }
+
+    //__________________________________________________________________________
+    // Formatting
+
+    /**
+     * Appends a calendar date in extended format, as
+     * {@link java.time.LocalDate#toString()} does.
+     *
+     * @param epochDay the number of days since 1970-01-01
+     * @param out the builder to append to
+     * @return the builder
+     */
+    public static StringBuilder formatDate(long epochDay, StringBuilder out) {
+        long yearMonthDay = fromEpochDay(epochDay);
+        long year = yearMonthDay >> 9;
+        appendYear(year, out).append('-');
+        appendTwoDigits((int) (yearMonthDay >> 5 & 0xF), out).append('-');
+        return appendTwoDigits((int) (yearMonthDay & 0x1F), out);
+    }
+
+    /**
+     * Appends a week date in extended format, such as {@code 2018-W26-6}.
+     *
+     * @param epochDay the number of days since 1970-01-01
+     * @param out the builder to append to
+     * @return the builder
+     */
+    public static StringBuilder formatWeekDate(long epochDay, StringBuilder out) {
+        int dayOfWeek = dayOfWeek(epochDay);
+        // The week belongs to the year holding its Thursday
+        long thursday = epochDay + 4 - dayOfWeek;
+        long year = fromEpochDay(thursday) >> 9;
+        int week = (int) ((thursday - toEpochDay(year, 1, 1)) / 7) + 1;
+        appendYear(year, out).append("-W");
+        return appendTwoDigits(week, out).append('-').append((char) ('0' + dayOfWeek));
+    }
+
+    /**
+     * Appends a time of day in extended format, as
+     * {@link java.time.LocalTime#toString()} does: seconds are left out when
+     * they and the fraction are zero, and fractional digits come in groups of
+     * three as needed.
+     *
+     * @param nanoOfDay the number of nanoseconds since midnight
+     * @param out the builder to append to
+     * @return the builder
+     * @throws IllegalArgumentException if the time does not fall within a day
+     */
+    public static StringBuilder formatTime(long nanoOfDay, StringBuilder out) {
+        if (nanoOfDay < 0 || nanoOfDay >= NANOS_PER_DAY) throw new IllegalArgumentException("Time out of the day range: " + nanoOfDay);
+        if (nanoOfDay % NANOS_PER_MINUTE != 0) return appendTime(nanoOfDay, out);
+
+        int minutes = (int) (nanoOfDay / NANOS_PER_MINUTE);
+        return appendTwoDigits(minutes % 60, appendTwoDigits(minutes / 60, out).append(':'));
+    }
+
+    /**
+     * Appends a zone offset, as {@link java.time.ZoneOffset#toString()} does.
+     *
+     * @param offsetSeconds the offset from UTC in seconds
+     * @param out the builder to append to
+     * @return the builder
+     */
+    public static StringBuilder formatOffset(int offsetSeconds, StringBuilder out) {
+        if (offsetSeconds == 0) return out.append('Z');
+        int absolute = Math.abs(offsetSeconds);
+        out.append(offsetSeconds < 0 ? '-' : '+');
+        appendTwoDigits(absolute / 3600, out).append(':');
+        appendTwoDigits(absolute / 60 % 60, out);
+        if (absolute % 60 != 0) appendTwoDigits(absolute % 60, out.append(':'));
+        return out;
+    }
+
+    /**
+     * Appends an instant as a UTC date and time, as
+     * {@link java.time.Instant#toString()} does.
+     *
+     * @param epochMillis the number of milliseconds since 1970-01-01T00:00Z
+     * @param out the builder to append to
+     * @return the builder
+     */
+    public static StringBuilder formatEpochMillis(long epochMillis, StringBuilder out) {
+        return formatInstant(Math.floorDiv(epochMillis, 1000L), (int) Math.floorMod(epochMillis, 1000L) * 1_000_000, out);
+    }
+
+    /**
+     * Appends an instant as a UTC date and time, as
+     * {@link java.time.Instant#toString()} does.
+     *
+     * @param epochNanos the number of nanoseconds since 1970-01-01T00:00Z
+     * @param out the builder to append to
+     * @return the builder
+     */
+    public static StringBuilder formatEpochNanos(long epochNanos, StringBuilder out) {
+        return formatInstant(Math.floorDiv(epochNanos, NANOS_PER_SECOND), (int) Math.floorMod(epochNanos, NANOS_PER_SECOND), out);
+    }
+
+    /**
+     * Appends a duration in {@code PTnHnMnS} format, as
+     * {@link java.time.Duration#toString()} does.
+     *
+     * @param nanos the duration in nanoseconds
+     * @param out the builder to append to
+     * @return the builder
+     */
+    public static StringBuilder formatDuration(long nanos, StringBuilder out) {
+        if (nanos == 0) return out.append("PT0S");
+        long seconds = Math.floorDiv(nanos, NANOS_PER_SECOND);
+        int nano = (int) Math.floorMod(nanos, NANOS_PER_SECOND);
+
+        // A negative duration with a fraction shows as -s.fff, rounding the
+        // seconds towards zero
+        long effective = seconds < 0 && nano > 0 ? seconds + 1 : seconds;
+        long hours = effective / 3600;
+        int minutes = (int) (effective % 3600 / 60);
+        int secs = (int) (effective % 60);
+
+        out.append("PT");
+        int start = out.length();
+        if (hours != 0) out.append(hours).append('H');
+        if (minutes != 0) out.append(minutes).append('M');
+        if (secs == 0 && nano == 0 && out.length() > start) return out;
+
+        if (seconds < 0 && nano > 0 && secs == 0) out.append("-0");
+        else out.append(secs);
+        if (nano > 0) {
+            int fraction = seconds < 0 ? (int) NANOS_PER_SECOND - nano : nano;
+            int digits = 9;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            out.append('.');
+            appendPadded(fraction, digits, out);
+        }
+        return out.append('S');
+    }
+
+    //__________________________________________________________________________
+    // Calendar arithmetic
+
+    /**
+     * Tells whether a year of the proleptic Gregorian calendar is a leap year.
+     *
+     * @param year the year
+     * @return true if the year has 366 days
+     */
+    public static boolean isLeap(long year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    /**
+     * Converts a calendar date into epoch days, without validating it.
+     *
+     * @param year the year
+     * @param month the month, from 1 to 12
+     * @param day the day of the month
+     * @return the number of days since 1970-01-01
+     */
+    public static long toEpochDay(long year, int month, int day) {
+        // Years starting in March put leap days last
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        int shiftedMonth = month > 2 ? month - 3 : month + 9;
+        long dayOfYear = (153 * shiftedMonth + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097 + dayOfEra - DAYS_0000_TO_1970;
+    }
+
+    /**
+     * Gets the ISO day of week of an epoch day.
+     *
+     * @param epochDay the number of days since 1970-01-01
+     * @return the day of week, from 1 for Monday to 7 for Sunday
+     */
+    public static int dayOfWeek(long epochDay) {
+        return (int) Math.floorMod(epochDay + 3, 7L) + 1;
+    }
+
+    // Packs year << 9 | month << 5 | day, to spare a holder object
+    private static long fromEpochDay(long epochDay) {
+        long days = epochDay + DAYS_0000_TO_1970;
+        long era = Math.floorDiv(days, 146_097);
+        long dayOfEra = days - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (int) ((5 * dayOfYear + 2) / 153);
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year << 9 | month << 5 | day;
+    }
+
+    private static long weekDateToEpochDay(long year, int week, int day) {
+        long january4 = toEpochDay(year, 1, 4);
+        long firstMonday = january4 - dayOfWeek(january4) + 1;
+        return firstMonday + (week - 1) * 7L + day - 1;
+    }
+
+    // Years starting on a Thursday, or leap ones starting on a Wednesday
+    private static int weeksInYear(long year) {
+        int january1 = dayOfWeek(toEpochDay(year, 1, 1));
+        return january1 == 4 || (january1 == 3 && isLeap(year)) ? 53 : 52;
+    }
+
+    private static int lengthOfMonth(long year, int month) {
+        switch (month) {
+            case 2:
+                return isLeap(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    //__________________________________________________________________________
+    // Helpers
+
+    private static long epochSecond(CharSequence text, long epochDay, long nanoOfDay, int offset) {
+        try {
+            return Math.subtractExact(Math.addExact(Math.multiplyExact(epochDay, SECONDS_PER_DAY), nanoOfDay / NANOS_PER_SECOND), offset);
+        }
+        catch (ArithmeticException ex) {
+            throw error("Instant out of range", text, 0);
+        }
+    }
+
+    // The time ends where the offset starts
+    private static int offsetStart(CharSequence text, int t) {
+        int at = t + 1;
+        while (at < text.length() && !isOffsetStart(text.charAt(at)))
+            at++;
+        return at;
+    }
+
+    private static int indexOfT(CharSequence text) {
+        for (int i = 0; i < text.length(); i++)
+            if (text.charAt(i) == 'T' || text.charAt(i) == 't') return i;
+        throw error("Expected 'T'", text, text.length());
+    }
+
+    private static boolean isOffsetStart(char c) {
+        return c == 'Z' || c == 'z' || c == '+' || c == '-';
+    }
+
+    private static StringBuilder formatInstant(long epochSecond, int nano, StringBuilder out) {
+        long epochDay = Math.floorDiv(epochSecond, (long) SECONDS_PER_DAY);
+        int secondOfDay = (int) Math.floorMod(epochSecond, (long) SECONDS_PER_DAY);
+        formatDate(epochDay, out).append('T');
+        // Unlike LocalTime, Instant always shows the seconds
+        return appendTime(secondOfDay * NANOS_PER_SECOND + nano, out).append('Z');
+    }
+
+    // Four digits at least, signed outside 0000-9999
+    private static StringBuilder appendYear(long year, StringBuilder out) {
+        long absolute = Math.abs(year);
+        if (year < 0) out.append('-');
+        else if (year > 9999) out.append('+');
+        if (absolute < 1000) appendPadded((int) absolute, 4, out);
+        else out.append(absolute);
+        return out;
+    }
+
+    private static StringBuilder appendTime(long nanoOfDay, StringBuilder out) {
+        TimeISO8601.format((int) (nanoOfDay / NANOS_PER_SECOND), out);
+        return appendFraction((int) (nanoOfDay % NANOS_PER_SECOND), out);
+    }
+
+    private static StringBuilder appendFraction(int nano, StringBuilder out) {
+        if (nano == 0) return out;
+        out.append('.');
+        if (nano % 1_000_000 == 0) return appendPadded(nano / 1_000_000, 3, out);
+        if (nano % 1000 == 0) return appendPadded(nano / 1000, 6, out);
+        return appendPadded(nano, 9, out);
+    }
+
+    private static StringBuilder appendTwoDigits(int value, StringBuilder out) {
+        return out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    private static StringBuilder appendPadded(int value, int digits, StringBuilder out) {
+        for (int divisor = tenPower(digits - 1); divisor > 0; divisor /= 10)
+            out.append((char) ('0' + value / divisor % 10));
+        return out;
+    }
+
+    private static int tenPower(int exponent) {
+        int power = 1;
+        while (exponent-- > 0)
+            power *= 10;
+        return power;
+    }
+
+    private static int unitOf(char c) {
+        switch (c) {
+            case 'D':
+            case 'd':
+                return 0;
+            case 'H':
+            case 'h':
+                return 1;
+            case 'M':
+            case 'm':
+                return 2;
+            case 'S':
+            case 's':
+                return 3;
+            default:
+                return -1;
+        }
+    }
+
+    private static long unitNanos(int unit) {
+        switch (unit) {
+            case 0:
+                return NANOS_PER_DAY;
+            case 1:
+                return NANOS_PER_HOUR;
+            case 2:
+                return NANOS_PER_MINUTE;
+            default:
+                return NANOS_PER_SECOND;
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // Exactly the digits in [from, end), which must not pass the limit
+    private static long digits(CharSequence text, int from, int end, int limit) {
+        if (end > limit) throw error("Text too short", text, limit);
+        long value = 0;
+        for (int i = from; i < end; i++) {
+            char c = text.charAt(i);
+            if (!isDigit(c)) throw error("Expected digit", text, i);
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static long digitsExact(CharSequence text, int from, int end) {
+        long value = 0;
+        for (int i = from; i < end; i++)
+            value = Math.addExact(Math.multiplyExact(value, 10L), text.charAt(i) - '0');
+        return value;
+    }
+
+    // Up to nine digits, scaled to nanoseconds
+    private static long fraction(CharSequence text, int from, int to) {
+        long value = digits(text, from, to, to);
+        for (int i = to - from; i < 9; i++)
+            value *= 10;
+        return value;
+    }
+
+    private static void expect(CharSequence text, int at, int to, char expected) {
+        if (at >= to || text.charAt(at) != expected) throw error("Expected '" + expected + "'", text, at);
+    }
+
+    private static void end(CharSequence text, int at, int to) {
+        if (at != to) throw error("Unexpected character", text, at);
+    }
+
+    private static DateTimeParseException error(String message, CharSequence text, int index) {
+        return new DateTimeParseException(message + " at index " + index, text, index);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.time;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Decodes columns of fixed-width {@code hh:mm:ss} fields, encoded in ASCII,
+ * into seconds, eight bytes at a time.
+ * <p>
+ * Each field is read as a single little-endian {@code long}, whose bytes are
+ * range checked all at once, then combined into hours, minutes and seconds by
+ * a single multiplication. A field failing the check is handed to the scalar
+ * parser of {@link TimeISO8601}, so that validation is exactly the same as
+ * {@link TimeISO8601#parse(byte[], int)}.
+ *
+ * @author Project2100
+ */
+public final class TimeColumnDecoder {
+
+    private static final long HIGH_BITS = 0x8080_8080_8080_8080L;
+    private static final long ZEROS = 0x3030_3030_3030_3030L;
+
+    // Per byte, from the least significant: h h : m m : s s. Adding 0x80 - lo
+    // sets the high bit when the byte is at least lo, adding 0x7F - hi when it
+    // exceeds hi; ASCII bytes never carry into the next one
+    private static final long ADD_LOW = 0x5050_4650_5046_5050L;
+    private static final long ADD_HIGH = 0x464A_4546_4A45_4646L;
+
+    private TimeColumnDecoder() {
+    }
+
+    /**
+     * Decodes a column of fields from a buffer, starting at its position,
+     * which is advanced past the last decoded record.
+     *
+     * @param buffer the buffer holding the records
+     * @param stride the distance in bytes between consecutive fields, at least
+     * {@value TimeISO8601#TIME_LENGTH}
+     * @param out the array receiving the seconds since midnight
+     * @param offset the index in the array of the first decoded field
+     * @param count the number of fields to decode
+     * @throws NumberFormatException if a field is malformed; the buffer
+     * position is then left at the start of that field's record
+     * @throws BufferUnderflowException if the buffer holds fewer
+     * fields than requested
+     */
+    public static void decode(ByteBuffer buffer, int stride, int[] out, int offset, int count) {
+        if (stride < TimeISO8601.TIME_LENGTH) throw new IllegalArgumentException("Stride shorter than a time: " + stride);
+        if (offset < 0 || count < 0 || offset > out.length - count) throw new IndexOutOfBoundsException();
+        if (count == 0) return;
+
+        int start = buffer.position();
+        if ((long) (count - 1) * stride + TimeISO8601.TIME_LENGTH > buffer.remaining())
+            throw new BufferUnderflowException();
+
+        ByteBuffer words = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int index = start;
+        for (int i = 0; i < count; i++, index += stride) {
+            int seconds = decodeWord(words.getLong(index));
+            if (seconds < 0) seconds = decodeScalar(buffer, index);
+            if (seconds < 0) {
+                buffer.position(index);
+                throw new NumberFormatException("Malformed hh:mm:ss time in record " + i);
+            }
+            out[offset + i] = seconds;
+        }
+        buffer.position(Math.min(buffer.limit(), start + count * stride));
+    }
+
+    /**
+     * Decodes a column of fields from a file, mapping it in memory.
+     *
+     * @param file the file holding the records
+     * @param position the offset in the file of the first field
+     * @param stride the distance in bytes between consecutive fields
+     * @param count the number of fields to decode
+     * @return the seconds since midnight of each field
+     * @throws IOException if the file cannot be read
+     * @throws NumberFormatException if a field is malformed
+     */
+    public static int[] decode(Path file, long position, int stride, int count) throws IOException {
+        int[] out = new int[count];
+        // Mappings are limited to 2GB, so large columns go in chunks
+        int chunk = Math.max(1, (Integer.MAX_VALUE - TimeISO8601.TIME_LENGTH) / stride);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (int done = 0; done < count; done += chunk) {
+                int fields = Math.min(chunk, count - done);
+                long size = (long) (fields - 1) * stride + TimeISO8601.TIME_LENGTH;
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position + (long) done * stride, size);
+                try {
+                    decode(region, stride, out, done, fields);
+                }
+                catch (NumberFormatException ex) {
+                    throw new NumberFormatException("Malformed hh:mm:ss time in record " + (done + region.position() / stride));
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Decodes the eight bytes of a field, read in little-endian order, or
+     * returns -1 if any of them is out of range.
+     */
+    static int decodeWord(long word) {
+        long low = (word + ADD_LOW) & HIGH_BITS;
+        long high = (word + ADD_HIGH) & HIGH_BITS;
+        if (((word & HIGH_BITS) | high | (low ^ HIGH_BITS)) != 0) return -1;
+
+        // Each digit pair becomes tens * 10 + units in its first byte
+        long digits = word - ZEROS;
+        long pairs = digits * 10 + (digits >>> 8);
+        return (int) (pairs & 0xFF) * 3600 + (int) (pairs >>> 24 & 0xFF) * 60 + (int) (pairs >>> 48 & 0xFF);
+    }
+
+    private static int decodeScalar(ByteBuffer buffer, int index) {
+        return TimeISO8601.decode(buffer.get(index), buffer.get(index + 1), buffer.get(index + 2), buffer.get(index + 3),
+                buffer.get(index + 4), buffer.get(index + 5), buffer.get(index + 6), buffer.get(index + 7));
+    }
+}
@@ -24,6 +24,7 @@
 
 package project2100.commons.time;
 
+import java.io.IOException;
 import java.time.Duration;
 
 /**
@@ -31,9 +32,35 @@ import java.time.Duration;
  * @author Project2100
  */
 public class TimeISO8601 {
+
+    /**
+     * The length of a time in {@code hh:mm:ss} format.
+     */
+    public static final int TIME_LENGTH = 8;
+
+    /**
+     * The largest number of seconds writable in {@code hh:mm:ss} format.
+     */
+    public static final int MAX_TIME = 100 * 3600 - 1;
+
+    // "00" to "99", two characters per number
+    private static final char[] DIGIT_PAIRS = new char[200];
+
+    static {
+        for (int i = 0; i < 100; i++) {
+            DIGIT_PAIRS[2 * i] = (char) ('0' + i / 10);
+            DIGIT_PAIRS[2 * i + 1] = (char) ('0' + i % 10);
+        }
+    }
+
     // Both strings must be of format hh:mm:ss
     
     public static boolean isBefore(String current, String reference) {
+        if (current.length() == TIME_LENGTH && reference.length() == TIME_LENGTH) {
+            int cur = decode(current, 0), ref = decode(reference, 0);
+            if (cur >= 0 && ref >= 0) return cur < ref;
+        }
+
         String[] cur = current.split(":");
         String[] ref = reference.split(":");
 
@@ -47,12 +74,19 @@ public class TimeISO8601 {
     }
 
     public static int parse(String input) {
+        if (input.length() == TIME_LENGTH) {
+            int seconds = decode(input, 0);
+            if (seconds >= 0) return seconds;
+        }
+
         String[] values = input.split(":");
 
         return Integer.parseInt(values[2]) + (60 * Integer.parseInt(values[1]) + (3600 * Integer.parseInt(values[0])));
     }
 
     public static String prettifyDuration(Duration input) {
+        long seconds = input.getSeconds();
+        if (seconds >= 0 && seconds <= MAX_TIME) return pretty((int) seconds / 3600, (int) seconds / 60 % 60, (int) seconds % 60);
 
         return String.format("%02d:%02d:%02d", input.toHours(), input.toMinutes() % 60, input.getSeconds() % 60);
     }
@@ -60,10 +94,16 @@ public class TimeISO8601 {
     public static String prettifyInt(int input) {
         if (input>=24*60*60 || input<0) throw new IllegalArgumentException("Given integer value cannot represent a valid daily time signature");
 
-        return String.format("%02d:%02d:%02d", input/3600, input/60%60, input%60);
+        return pretty(input / 3600, input / 60 % 60, input % 60);
     }
 
+    /**
+     * @see TimeOfDay#plus(int, int, TimeOfDay.Overflow)
+     */
     public static String sumTimes(String input1, String input2) {
+        int time1 = dayTime(input1), time2 = dayTime(input2);
+        if (time1 >= 0 && time2 >= 0) return prettifyInt(TimeOfDay.plus(time1, time2, TimeOfDay.Overflow.WRAP));
+
         String[] values1 = input1.split(":");
         String[] values2 = input2.split(":");
 
@@ -81,10 +121,16 @@ public class TimeISO8601 {
         }
         if (h > 23) h -= 24;
 
-        return String.format("%02d:%02d:%02d", h, m, s);
+        return pretty(h, m, s);
     }
 
+    /**
+     * @see TimeOfDay#minus(int, int, TimeOfDay.Overflow)
+     */
     public static String subtractTimes(String input1, String input2) {
+        int time1 = dayTime(input1), time2 = dayTime(input2);
+        if (time1 >= 0 && time2 >= 0) return time1 < time2 ? null : prettifyInt(time1 - time2);
+
         String[] values1 = input1.split(":");
         String[] values2 = input2.split(":");
 
@@ -102,7 +148,268 @@ public class TimeISO8601 {
         }
         if (h < 0) return null;
 
-        return String.format("%02d:%02d:%02d", h, m, s);
+        return pretty(h, m, s);
     }
     
+    //__________________________________________________________________________
+    // Garbage-free formatting
+
+    /**
+     * Writes a number of seconds in {@code hh:mm:ss} format into a character
+     * array.
+     *
+     * @param seconds the number of seconds, up to {@link #MAX_TIME}
+     * @param out the array to write into
+     * @param offset the index of the first character to write
+     * @return the index following the last written character
+     * @throws IllegalArgumentException if the seconds are out of range
+     */
+    public static int format(int seconds, char[] out, int offset) {
+        checkFormattable(seconds);
+        int h = seconds / 3600, m = seconds / 60 % 60, s = seconds % 60;
+        out[offset] = DIGIT_PAIRS[2 * h];
+        out[offset + 1] = DIGIT_PAIRS[2 * h + 1];
+        out[offset + 2] = ':';
+        out[offset + 3] = DIGIT_PAIRS[2 * m];
+        out[offset + 4] = DIGIT_PAIRS[2 * m + 1];
+        out[offset + 5] = ':';
+        out[offset + 6] = DIGIT_PAIRS[2 * s];
+        out[offset + 7] = DIGIT_PAIRS[2 * s + 1];
+        return offset + TIME_LENGTH;
+    }
+
+    /**
+     * Writes a number of seconds in {@code hh:mm:ss} format, encoded in ASCII,
+     * into a byte array.
+     *
+     * @see #format(int, char[], int)
+     */
+    public static int format(int seconds, byte[] out, int offset) {
+        checkFormattable(seconds);
+        int h = seconds / 3600, m = seconds / 60 % 60, s = seconds % 60;
+        out[offset] = (byte) DIGIT_PAIRS[2 * h];
+        out[offset + 1] = (byte) DIGIT_PAIRS[2 * h + 1];
+        out[offset + 2] = ':';
+        out[offset + 3] = (byte) DIGIT_PAIRS[2 * m];
+        out[offset + 4] = (byte) DIGIT_PAIRS[2 * m + 1];
+        out[offset + 5] = ':';
+        out[offset + 6] = (byte) DIGIT_PAIRS[2 * s];
+        out[offset + 7] = (byte) DIGIT_PAIRS[2 * s + 1];
+        return offset + TIME_LENGTH;
+    }
+
+    /**
+     * Appends a number of seconds in {@code hh:mm:ss} format to a builder.
+     *
+     * @param seconds the number of seconds, up to {@link #MAX_TIME}
+     * @param out the builder to append to
+     * @return the builder
+     * @throws IllegalArgumentException if the seconds are out of range
+     */
+    public static StringBuilder format(int seconds, StringBuilder out) {
+        checkFormattable(seconds);
+        int h = seconds / 3600, m = seconds / 60 % 60, s = seconds % 60;
+        return out.append(DIGIT_PAIRS, 2 * h, 2).append(':')
+                .append(DIGIT_PAIRS, 2 * m, 2).append(':')
+                .append(DIGIT_PAIRS, 2 * s, 2);
+    }
+
+    /**
+     * Appends a number of seconds in {@code hh:mm:ss} format to any
+     * {@link Appendable}, one character at a time.
+     *
+     * @param seconds the number of seconds, up to {@link #MAX_TIME}
+     * @param out the destination
+     * @return the destination
+     * @throws IOException if the destination fails
+     * @throws IllegalArgumentException if the seconds are out of range
+     */
+    public static Appendable format(int seconds, Appendable out) throws IOException {
+        checkFormattable(seconds);
+        int h = seconds / 3600, m = seconds / 60 % 60, s = seconds % 60;
+        return out.append(DIGIT_PAIRS[2 * h]).append(DIGIT_PAIRS[2 * h + 1]).append(':')
+                .append(DIGIT_PAIRS[2 * m]).append(DIGIT_PAIRS[2 * m + 1]).append(':')
+                .append(DIGIT_PAIRS[2 * s]).append(DIGIT_PAIRS[2 * s + 1]);
+    }
+
+    /**
+     * Gets the shared {@code hh:mm:ss} string of a time of day. All 86400
+     * strings are built on first use, then every call returns the same
+     * instance for the same time.
+     *
+     * @param seconds the number of seconds since midnight
+     * @return the time's string
+     * @throws IllegalArgumentException if the seconds do not fall within a day
+     */
+    public static String cachedTime(int seconds) {
+        if (seconds < 0 || seconds >= 24 * 60 * 60) throw new IllegalArgumentException("Given integer value cannot represent a valid daily time signature");
+        return DayTimes.STRINGS[seconds];
+    }
+
+    // Lazily initialized on first access
+    private static final class DayTimes {
+
+        private static final String[] STRINGS = new String[24 * 60 * 60];
+
+        static {
+            char[] buffer = new char[TIME_LENGTH];
+            for (int i = 0; i < STRINGS.length; i++) {
+                format(i, buffer, 0);
+                STRINGS[i] = new String(buffer);
+            }
+        }
+    }
+
+    // Falls back to the formatter for fields not fitting two digits
+    private static String pretty(int h, int m, int s) {
+        if (h < 0 || h > 99 || m < 0 || m > 99 || s < 0 || s > 99)
+            return String.format("%02d:%02d:%02d", h, m, s);
+
+        char[] buffer = {
+            DIGIT_PAIRS[2 * h], DIGIT_PAIRS[2 * h + 1], ':',
+            DIGIT_PAIRS[2 * m], DIGIT_PAIRS[2 * m + 1], ':',
+            DIGIT_PAIRS[2 * s], DIGIT_PAIRS[2 * s + 1]};
+        return new String(buffer);
+    }
+
+    private static void checkFormattable(int seconds) {
+        if (seconds < 0 || seconds > MAX_TIME) throw new IllegalArgumentException("Time out of the hh:mm:ss range: " + seconds);
+    }
+
+    //__________________________________________________________________________
+    // Allocation-free parsing
+    //
+    // These entry points accept exactly the hh:mm:ss form, with two-digit
+    // fields and minutes and seconds up to 59, and throw on anything else.
+
+    /**
+     * Parses a time in {@code hh:mm:ss} format into seconds, without
+     * allocating.
+     *
+     * @param input the text holding the time
+     * @param offset the index of the time's first character
+     * @return the number of seconds since midnight
+     * @throws NumberFormatException if there is no well formed time at the
+     * given offset
+     */
+    public static int parse(CharSequence input, int offset) {
+        if (offset < 0 || offset > input.length() - TIME_LENGTH) throw malformed(offset);
+        int seconds = decode(input, offset);
+        if (seconds < 0) throw malformed(offset);
+        return seconds;
+    }
+
+    /**
+     * Parses a time in {@code hh:mm:ss} format into seconds, without
+     * allocating.
+     *
+     * @param input the characters holding the time
+     * @param offset the index of the time's first character
+     * @return the number of seconds since midnight
+     * @throws NumberFormatException if there is no well formed time at the
+     * given offset
+     */
+    public static int parse(char[] input, int offset) {
+        if (offset < 0 || offset > input.length - TIME_LENGTH) throw malformed(offset);
+        int seconds = decode(input[offset], input[offset + 1], input[offset + 2], input[offset + 3],
+                input[offset + 4], input[offset + 5], input[offset + 6], input[offset + 7]);
+        if (seconds < 0) throw malformed(offset);
+        return seconds;
+    }
+
+    /**
+     * Parses a time in {@code hh:mm:ss} format, encoded in ASCII, into
+     * seconds, without allocating.
+     *
+     * @param input the bytes holding the time
+     * @param offset the index of the time's first byte
+     * @return the number of seconds since midnight
+     * @throws NumberFormatException if there is no well formed time at the
+     * given offset
+     */
+    public static int parse(byte[] input, int offset) {
+        if (offset < 0 || offset > input.length - TIME_LENGTH) throw malformed(offset);
+        int seconds = decode(input[offset], input[offset + 1], input[offset + 2], input[offset + 3],
+                input[offset + 4], input[offset + 5], input[offset + 6], input[offset + 7]);
+        if (seconds < 0) throw malformed(offset);
+        return seconds;
+    }
+
+    /**
+     * Compares two times in {@code hh:mm:ss} format, without allocating.
+     *
+     * @param first the text holding the first time
+     * @param firstOffset the index of the first time
+     * @param second the text holding the second time
+     * @param secondOffset the index of the second time
+     * @return a negative number, zero or a positive number as the first time
+     * comes before, equals or comes after the second one
+     * @throws NumberFormatException if either time is malformed
+     */
+    public static int compare(CharSequence first, int firstOffset, CharSequence second, int secondOffset) {
+        return Integer.compare(parse(first, firstOffset), parse(second, secondOffset));
+    }
+
+    /**
+     * Compares two times in {@code hh:mm:ss} format, without allocating.
+     *
+     * @see #compare(CharSequence, int, CharSequence, int)
+     */
+    public static int compare(char[] first, int firstOffset, char[] second, int secondOffset) {
+        return Integer.compare(parse(first, firstOffset), parse(second, secondOffset));
+    }
+
+    /**
+     * Compares two ASCII times in {@code hh:mm:ss} format, without allocating.
+     *
+     * @see #compare(CharSequence, int, CharSequence, int)
+     */
+    public static int compare(byte[] first, int firstOffset, byte[] second, int secondOffset) {
+        return Integer.compare(parse(first, firstOffset), parse(second, secondOffset));
+    }
+
+    /**
+     * Tells whether a time in {@code hh:mm:ss} format comes before another,
+     * without allocating.
+     *
+     * @see #compare(CharSequence, int, CharSequence, int)
+     */
+    public static boolean isBefore(CharSequence current, int currentOffset, CharSequence reference, int referenceOffset) {
+        return compare(current, currentOffset, reference, referenceOffset) < 0;
+    }
+
+    private static int decode(CharSequence input, int offset) {
+        return decode(input.charAt(offset), input.charAt(offset + 1), input.charAt(offset + 2), input.charAt(offset + 3),
+                input.charAt(offset + 4), input.charAt(offset + 5), input.charAt(offset + 6), input.charAt(offset + 7));
+    }
+
+    /**
+     * Converts the eight characters of a time into seconds, or -1 if they are
+     * malformed. Digit checks are folded into a single sign test: a digit d
+     * is valid when both d and 9 - d are non-negative.
+     */
+    static int decode(int h1, int h2, int c1, int m1, int m2, int c2, int s1, int s2) {
+        h1 -= '0';
+        h2 -= '0';
+        m1 -= '0';
+        m2 -= '0';
+        s1 -= '0';
+        s2 -= '0';
+        int invalid = h1 | (9 - h1) | h2 | (9 - h2)
+                | m1 | (5 - m1) | m2 | (9 - m2)
+                | s1 | (5 - s1) | s2 | (9 - s2);
+        if (invalid < 0 || ((c1 ^ ':') | (c2 ^ ':')) != 0) return -1;
+        return (h1 * 10 + h2) * 3600 + (m1 * 10 + m2) * 60 + s1 * 10 + s2;
+    }
+
+    // The seconds of a well formed time of day, or -1
+    private static int dayTime(String input) {
+        if (input.length() != TIME_LENGTH) return -1;
+        int seconds = decode(input, 0);
+        return seconds < TimeOfDay.SECONDS_PER_DAY ? seconds : -1;
+    }
+
+    private static NumberFormatException malformed(int offset) {
+        return new NumberFormatException("Malformed hh:mm:ss time at offset " + offset);
+    }
 }
@@ -0,0 +1,275 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.time;
+
+/**
+ * Arithmetic on times of day encoded as an {@code int} of seconds since
+ * midnight, from 0 to {@link #MAX}, and on durations encoded as signed
+ * {@code int} seconds.
+ * <p>
+ * Operations that may leave the day take an {@link Overflow} mode telling
+ * whether to wrap around midnight, to stop at the day's bounds, or to fail.
+ * Chained and bulk arithmetic thus stays on primitives; text is produced or
+ * read only through {@link #parse(CharSequence)}, {@link #toString(int)} and
+ * {@link #format(int, StringBuilder)}.
+ *
+ * @author Project2100
+ */
+public final class TimeOfDay {
+
+    public static final int SECONDS_PER_DAY = 24 * 60 * 60;
+    public static final int MIDNIGHT = 0;
+    public static final int MAX = SECONDS_PER_DAY - 1;
+
+    /**
+     * What to do with a result falling outside of the day.
+     */
+    public enum Overflow {
+        /**
+         * Wrap around midnight, as a clock does.
+         */
+        WRAP,
+        /**
+         * Stop at {@link #MIDNIGHT} or {@link #MAX}.
+         */
+        CLAMP,
+        /**
+         * Throw an {@link ArithmeticException}.
+         */
+        FAIL
+    }
+
+    private TimeOfDay() {
+    }
+
+    /**
+     * Encodes a time of day.
+     *
+     * @param hours the hours, from 0 to 23
+     * @param minutes the minutes, from 0 to 59
+     * @param seconds the seconds, from 0 to 59
+     * @return the seconds since midnight
+     * @throws IllegalArgumentException if a field is out of range
+     */
+    public static int of(int hours, int minutes, int seconds) {
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59)
+            throw new IllegalArgumentException("Invalid time: " + hours + ":" + minutes + ":" + seconds);
+        return hours * 3600 + minutes * 60 + seconds;
+    }
+
+    public static int hours(int time) {
+        return time / 3600;
+    }
+
+    public static int minutes(int time) {
+        return time / 60 % 60;
+    }
+
+    public static int seconds(int time) {
+        return time % 60;
+    }
+
+    /**
+     * Tells whether a value encodes a time of day.
+     *
+     * @param time the value to check
+     * @return true if the value is between {@link #MIDNIGHT} and {@link #MAX}
+     */
+    public static boolean isValid(int time) {
+        return time >= MIDNIGHT && time <= MAX;
+    }
+
+    //__________________________________________________________________________
+    // Arithmetic
+
+    /**
+     * Adds a duration to a time of day.
+     *
+     * @param time the time of day
+     * @param duration the seconds to add, possibly negative
+     * @param mode how to handle a result outside of the day
+     * @return the resulting time of day
+     * @throws ArithmeticException if the result leaves the day in
+     * {@link Overflow#FAIL} mode
+     */
+    public static int plus(int time, int duration, Overflow mode) {
+        return fit((long) time + duration, mode);
+    }
+
+    /**
+     * Subtracts a duration from a time of day.
+     *
+     * @see #plus(int, int, Overflow)
+     */
+    public static int minus(int time, int duration, Overflow mode) {
+        return fit((long) time - duration, mode);
+    }
+
+    /**
+     * Measures the duration from a time of day to another, on the same day.
+     *
+     * @param from the starting time
+     * @param to the ending time
+     * @return the seconds between the two, negative if <code>to</code> comes
+     * first
+     */
+    public static int between(int from, int to) {
+        return to - from;
+    }
+
+    /**
+     * Measures the duration from a time of day to the next occurrence of
+     * another, possibly on the following day.
+     *
+     * @param from the starting time
+     * @param to the ending time
+     * @return the seconds between the two, from 0 to {@link #MAX}
+     */
+    public static int until(int from, int to) {
+        return Math.floorMod(to - from, SECONDS_PER_DAY);
+    }
+
+    public static int compare(int first, int second) {
+        return Integer.compare(first, second);
+    }
+
+    /**
+     * Restricts a time of day to a range.
+     *
+     * @param time the time of day
+     * @param min the earliest allowed time
+     * @param max the latest allowed time
+     * @return the time, or the nearest bound of the range
+     * @throws IllegalArgumentException if the range is empty
+     */
+    public static int clamp(int time, int min, int max) {
+        if (min > max) throw new IllegalArgumentException("Empty range: " + min + " > " + max);
+        return Math.max(min, Math.min(max, time));
+    }
+
+    /**
+     * Adds a duration to every time of day in an array, in place. Each
+     * element ends up as {@link #plus(int, int, Overflow)} would make it, even
+     * if it did not encode a time of day.
+     *
+     * @param times the times of day
+     * @param duration the seconds to add, possibly negative
+     * @param mode how to handle results outside of the day
+     * @throws ArithmeticException if a result leaves the day in
+     * {@link Overflow#FAIL} mode; the times before it are already updated
+     */
+    public static void plusAll(int[] times, int duration, Overflow mode) {
+        plusAll(times, 0, times.length, duration, mode);
+    }
+
+    /**
+     * Adds a duration to the times of day in a range of an array, in place.
+     *
+     * @see #plusAll(int[], int, Overflow)
+     */
+    public static void plusAll(int[] times, int from, int to, int duration, Overflow mode) {
+        if (mode == Overflow.WRAP) {
+            // One modulo for the duration, then at most one correction each;
+            // values outside of the day take the slow path, as in plus()
+            int shift = Math.floorMod(duration, SECONDS_PER_DAY);
+            for (int i = from; i < to; i++) {
+                if (!isValid(times[i])) {
+                    times[i] = fit((long) times[i] + duration, mode);
+                    continue;
+                }
+                int time = times[i] + shift;
+                times[i] = time >= SECONDS_PER_DAY ? time - SECONDS_PER_DAY : time;
+            }
+        }
+        else
+            for (int i = from; i < to; i++)
+                times[i] = fit((long) times[i] + duration, mode);
+    }
+
+    /**
+     * Sums an array of durations, without wrapping.
+     *
+     * @param durations the durations in seconds
+     * @return their total in seconds
+     */
+    public static long sum(int[] durations) {
+        long total = 0;
+        for (int duration : durations)
+            total += duration;
+        return total;
+    }
+
+    private static int fit(long time, Overflow mode) {
+        if (time >= MIDNIGHT && time <= MAX) return (int) time;
+        switch (mode) {
+            case WRAP:
+                return (int) Math.floorMod(time, (long) SECONDS_PER_DAY);
+            case CLAMP:
+                return time < MIDNIGHT ? MIDNIGHT : MAX;
+            default:
+                throw new ArithmeticException("Time out of the day: " + time);
+        }
+    }
+
+    //__________________________________________________________________________
+    // Text edges
+
+    /**
+     * Parses a time of day in {@code hh:mm:ss} format.
+     *
+     * @param text the time
+     * @return the seconds since midnight
+     * @throws NumberFormatException if the text is not a time of day
+     */
+    public static int parse(CharSequence text) {
+        if (text.length() != TimeISO8601.TIME_LENGTH) throw new NumberFormatException("Malformed hh:mm:ss time: " + text);
+        int time = TimeISO8601.parse(text, 0);
+        if (time > MAX) throw new NumberFormatException("Time out of the day: " + text);
+        return time;
+    }
+
+    /**
+     * Gets the {@code hh:mm:ss} string of a time of day, shared across calls.
+     *
+     * @param time the time of day
+     * @return the time's string
+     * @see TimeISO8601#cachedTime(int)
+     */
+    public static String toString(int time) {
+        return TimeISO8601.cachedTime(time);
+    }
+
+    /**
+     * Appends a time of day in {@code hh:mm:ss} format.
+     *
+     * @param time the time of day
+     * @param out the builder to append to
+     * @return the builder
+     */
+    public static StringBuilder format(int time, StringBuilder out) {
+        if (!isValid(time)) throw new IllegalArgumentException("Time out of the day: " + time);
+        return TimeISO8601.format(time, out);
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andrea Proietto
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package project2100.commons.time;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.IsoFields;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Randomised round-trips of {@link ISO8601} against {@code java.time}.
+ *
+ * @author Project2100
+ */
+class ISO8601Test {
+
+    private static final int ROUNDS = 100_000;
+    private static final long NANOS_PER_DAY = 86_400_000_000_000L;
+
+    // Fixed, so that failures can be reproduced
+    private final Random random = new Random(2100);
+
+    //__________________________________________________________________________
+    // Dates
+
+    @Test
+    void calendarDates() {
+        for (int i = 0; i < ROUNDS; i++) {
+            LocalDate date = randomDate();
+            long epochDay = date.toEpochDay();
+            assertEquals(date.toString(), format(epochDay), "Formatting " + date);
+            assertEquals(epochDay, ISO8601.parseDate(date.toString()), "Parsing " + date);
+            // Basic format has four-digit years only
+            if (date.getYear() >= 0 && date.getYear() <= 9999)
+                assertEquals(epochDay, ISO8601.parseDate(date.format(DateTimeFormatter.BASIC_ISO_DATE)), "Parsing basic " + date);
+        }
+    }
+
+    @Test
+    void ordinalDates() {
+        for (int i = 0; i < ROUNDS; i++) {
+            LocalDate date = randomDate();
+            String ordinal = date.format(DateTimeFormatter.ISO_ORDINAL_DATE);
+            assertEquals(date.toEpochDay(), ISO8601.parseDate(ordinal), "Parsing " + ordinal);
+            if (date.getYear() >= 0 && date.getYear() <= 9999)
+                assertEquals(date.toEpochDay(), ISO8601.parseDate(ordinal.replace("-", "")), "Parsing basic " + ordinal);
+        }
+    }
+
+    @Test
+    void weekDates() {
+        for (int i = 0; i < ROUNDS; i++) {
+            LocalDate date = randomDate();
+            String week = date.format(DateTimeFormatter.ISO_WEEK_DATE);
+            assertEquals(week, ISO8601.formatWeekDate(date.toEpochDay(), new StringBuilder()).toString(), "Formatting " + date);
+            assertEquals(date.toEpochDay(), ISO8601.parseDate(week), "Parsing " + week);
+            int weekYear = date.get(IsoFields.WEEK_BASED_YEAR);
+            if (weekYear >= 0 && weekYear <= 9999)
+                assertEquals(date.toEpochDay(), ISO8601.parseDate(week.replace("-", "")), "Parsing basic " + week);
+        }
+    }
+
+    @Test
+    void expandedYears() {
+        for (String text : new String[] {"+10000-01-01", "-10000-12-31", "+999999999-12-31", "-999999999-01-01", "-0004-02-29", "+12345-W01-1", "-12344-366"}) {
+            LocalDate date = text.contains("W")
+                    ? LocalDate.parse(text, DateTimeFormatter.ISO_WEEK_DATE)
+                    : text.length() - text.lastIndexOf('-') == 4 ? LocalDate.parse(text, DateTimeFormatter.ISO_ORDINAL_DATE) : LocalDate.parse(text);
+            assertEquals(date.toEpochDay(), ISO8601.parseDate(text), "Parsing " + text);
+            assertEquals(date.toString(), format(date.toEpochDay()), "Formatting " + date);
+        }
+    }
+
+    @Test
+    void invalidDates() {
+        for (String text : new String[] {"2018-02-29", "2018-13-01", "2018-00-10", "2018-366", "2018-W53-1", "2018-W01-8", "10000-01-01", "+999-01-01", "2018-06-3x", "2018/06/30"})
+            assertThrows(DateTimeParseException.class, () -> ISO8601.parseDate(text), text);
+    }
+
+    //__________________________________________________________________________
+    // Times and offsets
+
+    @Test
+    void times() {
+        for (int i = 0; i < ROUNDS; i++) {
+            LocalTime time = LocalTime.ofNanoOfDay(randomNanoOfDay());
+            long nanoOfDay = time.toNanoOfDay();
+            assertEquals(time.toString(), ISO8601.formatTime(nanoOfDay, new StringBuilder()).toString(), "Formatting " + time);
+            assertEquals(nanoOfDay, ISO8601.parseTime(time.toString()), "Parsing " + time);
+            String basic = time.toString().replace(":", "").replace('.', ',');
+            assertEquals(nanoOfDay, ISO8601.parseTime(basic), "Parsing basic " + basic);
+        }
+        assertEquals(12 * 3_600_000_000_000L, ISO8601.parseTime("12"));
+        assertThrows(DateTimeParseException.class, () -> ISO8601.parseTime("24:00"));
+        assertThrows(DateTimeParseException.class, () -> ISO8601.parseTime("12:60"));
+        assertThrows(DateTimeParseException.class, () -> ISO8601.parseTime("12:30:15.1234567890"));
+        assertThrows(IllegalArgumentException.class, () -> ISO8601.formatTime(NANOS_PER_DAY, new StringBuilder()));
+    }
+
+    @Test
+    void offsets() {
+        for (int i = 0; i < ROUNDS; i++) {
+            ZoneOffset offset = ZoneOffset.ofTotalSeconds(random.nextInt(2 * 18 * 3600 + 1) - 18 * 3600);
+            int seconds = offset.getTotalSeconds();
+            assertEquals(offset.toString(), ISO8601.formatOffset(seconds, new StringBuilder()).toString(), "Formatting " + offset);
+            assertEquals(seconds, ISO8601.parseOffset(offset.toString()), "Parsing " + offset);
+            if (seconds != 0)
+                assertEquals(seconds, ISO8601.parseOffset(offset.toString().replace(":", "")), "Parsing basic " + offset);
+        }
+        assertEquals(-5 * 3600, ISO8601.parseOffset("-05"));
+        assertThrows(DateTimeParseException.class, () -> ISO8601.parseOffset("+18:00:01"));
+        assertThrows(DateTimeParseException.class, () -> ISO8601.parseOffset("02:00"));
+    }
+
+    //__________________________________________________________________________
+    // Instants
+
+    @Test
+    void epochMillis() {
+        for (int i = 0; i < ROUNDS; i++) {
+            // Half of them within a few centuries of the epoch, half anywhere
+            long millis = i % 2 == 0 ? random.nextLong() % 10_000_000_000_000L : random.nextLong();
+            Instant instant = Instant.ofEpochMilli(millis);
+            assertEquals(instant.toString(), ISO8601.formatEpochMillis(millis, new StringBuilder()).toString(), "Formatting " + instant);
+            assertEquals(millis, ISO8601.parseEpochMillis(instant.toString()), "Parsing " + instant);
+        }
+    }
+
+    @Test
+    void epochNanos() {
+        for (int i = 0; i < ROUNDS; i++) {
+            long nanos = random.nextLong();
+            Instant instant = Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L));
+            assertEquals(instant.toString(), ISO8601.formatEpochNanos(nanos, new StringBuilder()).toString(), "Formatting " + instant);
+            assertEquals(nanos, ISO8601.parseEpochNanos(instant.toString()), "Parsing " + instant);
+        }
+        assertThrows(DateTimeParseException.class, () -> ISO8601.parseEpochNanos("2263-01-01T00:00Z"));
+    }
+
+    @Test
+    void offsetDateTimes() {
+        for (int i = 0; i < ROUNDS; i++) {
+            LocalDate date = LocalDate.ofEpochDay(random.nextInt(2 * 100_000) - 100_000);
+            ZoneOffset offset = ZoneOffset.ofTotalSeconds(random.nextInt(2 * 18 * 3600 + 1) - 18 * 3600);
+            OffsetDateTime dateTime = OffsetDateTime.of(date, LocalTime.ofNanoOfDay(randomNanoOfDay()), offset);
+            Instant instant = dateTime.toInstant();
+            assertEquals(instant.toEpochMilli(), ISO8601.parseEpochMillis(dateTime.toString()), "Parsing " + dateTime);
+            assertEquals(instant.getEpochSecond() * 1_000_000_000L + instant.getNano(), ISO8601.parseEpochNanos(dateTime.toString()), "Parsing " + dateTime);
+        }
+    }
+
+    //__________________________________________________________________________
+    // Durations
+
+    @Test
+    void durations() {
+        for (int i = 0; i < ROUNDS; i++) {
+            long nanos = randomDurationNanos();
+            Duration duration = Duration.ofNanos(nanos);
+            String formatted = ISO8601.formatDuration(nanos, new StringBuilder()).toString();
+            assertEquals(duration.toString(), formatted, "Formatting " + nanos);
+            assertEquals(nanos, ISO8601.parseDuration(formatted), "Parsing " + formatted);
+        }
+    }
+
+    @Test
+    void negativeFractions() {
+        for (long nanos : new long[] {-1, -500_000_000L, -1_500_000_000L, -60_000_000_001L, -3_600_500_000_000L}) {
+            String text = Duration.ofNanos(nanos).toString();
+            assertEquals(text, ISO8601.formatDuration(nanos, new StringBuilder()).toString(), "Formatting " + nanos);
+            assertEquals(nanos, ISO8601.parseDuration(text), "Parsing " + text);
+        }
+        assertEquals("PT-0.5S", ISO8601.formatDuration(-500_000_000L, new StringBuilder()).toString());
+    }
+
+    @Test
+    void signedComponents() {
+        for (int i = 0; i < ROUNDS; i++) {
+            String text = randomDurationText();
+            assertEquals(Duration.parse(text).toNanos(), ISO8601.parseDuration(text), "Parsing " + text);
+        }
+        for (String text : new String[] {"P", "PT", "P1H", "PT1D", "PT1S2M", "PT1.5M", "1D", "PT1.1234567890S"}) {
+            assertThrows(DateTimeParseException.class, () -> Duration.parse(text), text);
+            assertThrows(DateTimeParseException.class, () -> ISO8601.parseDuration(text), text);
+        }
+        assertThrows(DateTimeParseException.class, () -> ISO8601.parseDuration("PT9223372037S"));
+    }
+
+    //__________________________________________________________________________
+
+    private static String format(long epochDay) {
+        return ISO8601.formatDate(epochDay, new StringBuilder()).toString();
+    }
+
+    // Mostly around the present, the rest anywhere in LocalDate's range
+    private LocalDate randomDate() {
+        long min = LocalDate.MIN.toEpochDay(), max = LocalDate.MAX.toEpochDay();
+        long epochDay = random.nextInt(4) != 0
+                ? random.nextInt(2 * 4_000_000) - 4_000_000
+                : min + (long) (random.nextDouble() * (max - min));
+        return LocalDate.ofEpochDay(epochDay);
+    }
+
+    // Exercises each precision that toString picks
+    private long randomNanoOfDay() {
+        long nanos = (random.nextLong() & Long.MAX_VALUE) % NANOS_PER_DAY;
+        switch (random.nextInt(5)) {
+            case 0:
+                return nanos - nanos % 60_000_000_000L;
+            case 1:
+                return nanos - nanos % 1_000_000_000L;
+            case 2:
+                return nanos - nanos % 1_000_000L;
+            case 3:
+                return nanos - nanos % 1_000L;
+            default:
+                return nanos;
+        }
+    }
+
+    private long randomDurationNanos() {
+        long nanos = random.nextLong() >> random.nextInt(64);
+        switch (random.nextInt(3)) {
+            case 0:
+                return nanos - nanos % 1_000_000_000L;
+            case 1:
+                return nanos - nanos % 1_000_000L;
+            default:
+                return nanos;
+        }
+    }
+
+    private String randomDurationText() {
+        StringBuilder text = new StringBuilder();
+        if (random.nextBoolean()) text.append(random.nextBoolean() ? '-' : '+');
+        text.append('P');
+        boolean days = random.nextBoolean();
+        if (days) text.append(component()).append('D');
+        boolean time = !days || random.nextBoolean();
+        if (time) {
+            text.append('T');
+            int units = 0;
+            if (random.nextBoolean()) {
+                text.append(component()).append('H');
+                units++;
+            }
+            if (random.nextBoolean()) {
+                text.append(component()).append('M');
+                units++;
+            }
+            if (units == 0 || random.nextBoolean()) {
+                text.append(component());
+                if (random.nextBoolean()) {
+                    text.append(random.nextBoolean() ? '.' : ',');
+                    int digits = 1 + random.nextInt(9);
+                    for (int i = 0; i < digits; i++)
+                        text.append((char) ('0' + random.nextInt(10)));
+                }
+                text.append('S');
+            }
+        }
+        return text.toString();
+    }
+
+    private String component() {
+        String sign = random.nextInt(4) == 0 ? "-" : random.nextInt(8) == 0 ? "+" : "";
+        return sign + random.nextInt(100_000);
+    }
+}